@@ -0,0 +1,380 @@
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.MDC;
+import org.slf4j.Marker;
+import org.slf4j.helpers.FormattingTuple;
+import org.slf4j.helpers.MessageFormatter;
+
+/**
+ * 异步日志的环形缓冲区。业务线程把消息格式化好放进预先分配好的槽位里就返回，
+ * 由一个单独的消费线程按顺序交给slf4j写出，appender的IO再慢也不会卡住业务线程。
+ * 参数在放入前就替换进消息里，之后再改参数对象也不影响日志内容。
+ * <p>
+ * 生产者用CAS抢序号，写好槽位后发布该槽位的序号；消费者按序号顺序读，读完再把槽位让出来。
+ * 缓冲区满了以后怎么办由 {@link OverflowPolicy} 决定。
+ * <p>
+ * 放入时记下时间、线程名和MDC（MDC为空时不拷贝），消费线程写出前装上放入时的MDC，写完再清掉，
+ * 所以%X{}和同步写时一样。放入的线程名在MDC的 {@value #THREAD_KEY} 里，时间（毫秒数）在
+ * {@value #TIMESTAMP_KEY} 里，pattern里用%X{logThread}、%X{logTime}代替%thread、%d，
+ * 就是日志真正发生的线程和时间。
+ * <p>
+ * 关闭时消费线程写完已经放进来的日志后把序号封住，之后放入都会失败，由调用方同步写出，一条都不丢。
+ */
+public class AsyncLogDispatcher {
+
+    static final int TRACE = 0;
+    static final int DEBUG = 1;
+    static final int INFO = 2;
+    static final int WARN = 3;
+    static final int ERROR = 4;
+
+    /** MDC里放日志放入时间的key */
+    public static final String TIMESTAMP_KEY = "logTime";
+
+    /** MDC里放放入日志的线程名的key */
+    public static final String THREAD_KEY = "logThread";
+
+    /** 消费线程退出后claimed的值，之后再也分配不到序号 */
+    private static final long SEALED = Long.MIN_VALUE;
+
+    /**
+     * 缓冲区满了以后的处理方式
+     */
+    public enum OverflowPolicy {
+
+        /** 等消费线程腾出位置，一条都不丢 */
+        BLOCK,
+
+        /** WARN以下直接丢掉，WARN和ERROR等位置 */
+        DROP_BELOW_WARN,
+
+        /** 缓冲区过半以后WARN以下只留每N条中的一条，满了以后WARN以下丢掉，WARN和ERROR等位置 */
+        SAMPLE
+    }
+
+    /** 当前生效的实例，没开异步时为null */
+    private static volatile AsyncLogDispatcher installed;
+
+    private static Thread shutdownHook;
+
+    /** 一个槽位，预先分配，反复使用 */
+    private static final class Event {
+        org.slf4j.Logger target;
+        int level;
+        Marker marker;
+        String message;
+        Throwable throwable;
+        long timestamp;
+        String threadName;
+        Map<String, String> context;
+    }
+
+    private final Event[] ring;
+
+    private final int mask;
+
+    /** 每个槽位最后发布的序号，等于要读的序号说明这个槽位已经写好了 */
+    private final AtomicLongArray published;
+
+    /** 下一个要分配的序号 */
+    private final AtomicLong claimed = new AtomicLong();
+
+    /** 下一个要消费的序号，只有消费线程写 */
+    private volatile long consumed;
+
+    private final OverflowPolicy policy;
+
+    private final int sampleRate;
+
+    private final AtomicLong sampleCounter = new AtomicLong();
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private final Thread consumer;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param bufferSize 缓冲区能放多少条，向上取到2的幂
+     * @param policy 缓冲区满了以后的处理方式
+     * @param sampleRate SAMPLE策略下留下的比例，每sampleRate条留一条
+     */
+    public AsyncLogDispatcher(int bufferSize, OverflowPolicy policy, int sampleRate) {
+        int capacity = 2;
+        while (capacity < bufferSize) {
+            capacity <<= 1;
+        }
+        this.ring = new Event[capacity];
+        for (int i = 0; i < capacity; i++) {
+            ring[i] = new Event();
+        }
+        this.mask = capacity - 1;
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+        this.policy = policy;
+        this.sampleRate = Math.max(1, sampleRate);
+        this.consumer = new Thread(this::consume, "async-logger");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    /**
+     * 打开异步模式，替换掉之前的实例（之前的会先写完再停）
+     *
+     * @param dispatcher 新的实例
+     */
+    static synchronized void install(AsyncLogDispatcher dispatcher) {
+        AsyncLogDispatcher previous = installed;
+        installed = dispatcher;
+        if (previous != null) {
+            previous.close(5, TimeUnit.SECONDS);
+        }
+        if (shutdownHook == null) {
+            // 进程退出前把缓冲区里剩下的写完
+            shutdownHook = new Thread(() -> uninstall(), "async-logger-shutdown");
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        }
+    }
+
+    /**
+     * 关掉异步模式，缓冲区里剩下的写完后返回
+     */
+    static synchronized void uninstall() {
+        AsyncLogDispatcher previous = installed;
+        installed = null;
+        if (previous != null) {
+            previous.close(5, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * @return 当前生效的实例，没开异步时为null
+     */
+    static AsyncLogDispatcher installed() {
+        return installed;
+    }
+
+    /**
+     * 放入一条日志
+     *
+     * @return 已经关闭或者消费线程没了时返回false，调用方要自己同步写出；按溢出策略丢掉的也返回true
+     */
+    boolean publish(org.slf4j.Logger target, int level, Marker marker, String format, Object[] args,
+            Throwable throwable) {
+        long seq;
+        int idle = 0;
+        while (true) {
+            seq = claimed.get();
+            if (!running || seq == SEALED) {
+                return false;
+            }
+            long depth = seq - consumed;
+            if (level < WARN && policy == OverflowPolicy.SAMPLE && depth > mask / 2
+                    && sampleCounter.incrementAndGet() % sampleRate != 0) {
+                dropped.increment();
+                return true;
+            }
+            if (depth > mask) {
+                if (level < WARN && policy != OverflowPolicy.BLOCK) {
+                    dropped.increment();
+                    return true;
+                }
+                if (!consumer.isAlive()) {
+                    // 消费线程已经没了，等下去永远等不到
+                    return false;
+                }
+                // 满了，等消费线程
+                idle = backOff(idle);
+                continue;
+            }
+            // 消费线程封住序号以后这里的CAS一定失败，抢到序号就一定会被消费
+            if (claimed.compareAndSet(seq, seq + 1)) {
+                break;
+            }
+        }
+        // 在业务线程里格式化，参数对象之后再变也不影响
+        FormattingTuple formatted = throwable == null ? MessageFormatter.arrayFormat(format, args) : null;
+        Map<String, String> context = MDC.getCopyOfContextMap();
+        int index = (int) seq & mask;
+        Event event = ring[index];
+        event.target = target;
+        event.level = level;
+        event.marker = marker;
+        event.message = formatted == null ? format : formatted.getMessage();
+        event.throwable = formatted == null ? throwable : formatted.getThrowable();
+        event.timestamp = System.currentTimeMillis();
+        event.threadName = Thread.currentThread().getName();
+        event.context = context == null || context.isEmpty() ? null : context;
+        published.lazySet(index, seq);
+        return true;
+    }
+
+    private void consume() {
+        long next = 0;
+        int idle = 0;
+        try {
+            while (true) {
+                int index = (int) next & mask;
+                if (published.get(index) != next) {
+                    // 关闭以后，已经分配出去的序号都消费完了才封住退出；CAS失败说明又有人抢到了序号，接着消费
+                    if (!running && claimed.get() == next && claimed.compareAndSet(next, SEALED)) {
+                        return;
+                    }
+                    idle = backOff(idle);
+                    continue;
+                }
+                idle = 0;
+                Event event = ring[index];
+                try {
+                    if (event.context != null) {
+                        MDC.setContextMap(event.context);
+                    }
+                    MDC.put(THREAD_KEY, event.threadName);
+                    MDC.put(TIMESTAMP_KEY, Long.toString(event.timestamp));
+                    dispatch(event.target, event.level, event.marker, event.message, null, event.throwable);
+                } catch (Throwable e) {
+                    // Error也不能让消费线程退出，不然放入的线程会一直等下去
+                    failed.increment();
+                } finally {
+                    MDC.clear();
+                    event.target = null;
+                    event.marker = null;
+                    event.message = null;
+                    event.throwable = null;
+                    event.threadName = null;
+                    event.context = null;
+                }
+                next++;
+                consumed = next;
+            }
+        } finally {
+            // 意外退出时也封住，之后的日志由调用方同步写出；已经放进来没写的算失败
+            long previous = claimed.getAndSet(SEALED);
+            if (previous != SEALED && previous > next) {
+                failed.add(previous - next);
+            }
+        }
+    }
+
+    /**
+     * 先让出几次CPU，还没有就睡一小会儿
+     */
+    private static int backOff(int idle) {
+        if (idle < 100) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(100000);
+        }
+        return idle + 1;
+    }
+
+    /**
+     * 同步写出一条日志
+     */
+    static void dispatch(org.slf4j.Logger target, int level, Marker marker, String format, Object[] args,
+            Throwable throwable) {
+        switch (level) {
+            case TRACE:
+                if (throwable != null) {
+                    target.trace(marker, format, throwable);
+                } else {
+                    target.trace(marker, format, args);
+                }
+                break;
+            case DEBUG:
+                if (throwable != null) {
+                    target.debug(marker, format, throwable);
+                } else {
+                    target.debug(marker, format, args);
+                }
+                break;
+            case INFO:
+                if (throwable != null) {
+                    target.info(marker, format, throwable);
+                } else {
+                    target.info(marker, format, args);
+                }
+                break;
+            case WARN:
+                if (throwable != null) {
+                    target.warn(marker, format, throwable);
+                } else {
+                    target.warn(marker, format, args);
+                }
+                break;
+            default:
+                if (throwable != null) {
+                    target.error(marker, format, throwable);
+                } else {
+                    target.error(marker, format, args);
+                }
+                break;
+        }
+    }
+
+    /**
+     * 停止接收新日志，等缓冲区里的写完
+     *
+     * @param timeout 最多等多久
+     * @param unit timeout的单位
+     */
+    public void close(long timeout, TimeUnit unit) {
+        running = false;
+        try {
+            consumer.join(unit.toMillis(timeout));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return 缓冲区里等着写出的条数
+     */
+    public long getQueueDepth() {
+        return Math.max(0, claimed.get() - consumed);
+    }
+
+    /**
+     * @return 缓冲区能放多少条
+     */
+    public int getCapacity() {
+        return ring.length;
+    }
+
+    /**
+     * @return 因为缓冲区满了或者采样被丢掉的条数
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return 已经交给slf4j的条数
+     */
+    public long getProcessedCount() {
+        return consumed;
+    }
+
+    /**
+     * @return 交给slf4j时抛了异常的条数
+     */
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    /**
+     * @return 缓冲区满了以后的处理方式
+     */
+    public OverflowPolicy getOverflowPolicy() {
+        return policy;
+    }
+}
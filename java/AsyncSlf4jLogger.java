@@ -0,0 +1,371 @@
+import org.slf4j.Marker;
+
+/**
+ * 异步模式下 {@link Logger} 包装的slf4j logger。级别判断还是同步做，
+ * 通过的日志交给 {@link AsyncLogDispatcher} 的环形缓冲区，由消费线程写出；
+ * 没开异步模式时直接同步写出，和以前一样。
+ */
+class AsyncSlf4jLogger implements org.slf4j.Logger {
+
+    /** 真正写日志的slf4j logger */
+    private final org.slf4j.Logger target;
+
+    AsyncSlf4jLogger(org.slf4j.Logger target) {
+        this.target = target;
+    }
+
+    /**
+     * 开了异步就放进缓冲区，没开或者放不进去就直接写
+     */
+    private void log(int level, Marker marker, String format, Object[] args, Throwable throwable) {
+        AsyncLogDispatcher dispatcher = AsyncLogDispatcher.installed();
+        // 正在关闭或者消费线程没了，放不进去就同步写，WARN、ERROR不能丢
+        if (dispatcher == null || !dispatcher.publish(target, level, marker, format, args, throwable)) {
+            AsyncLogDispatcher.dispatch(target, level, marker, format, args, throwable);
+        }
+    }
+
+    public String getName() {
+        return target.getName();
+    }
+
+    public boolean isTraceEnabled() {
+        return target.isTraceEnabled();
+    }
+
+    public void trace(String msg) {
+        if (target.isTraceEnabled()) {
+            log(AsyncLogDispatcher.TRACE, null, msg, null, null);
+        }
+    }
+
+    public void trace(String format, Object arg) {
+        if (target.isTraceEnabled()) {
+            log(AsyncLogDispatcher.TRACE, null, format, new Object[] {arg}, null);
+        }
+    }
+
+    public void trace(String format, Object arg1, Object arg2) {
+        if (target.isTraceEnabled()) {
+            log(AsyncLogDispatcher.TRACE, null, format, new Object[] {arg1, arg2}, null);
+        }
+    }
+
+    public void trace(String format, Object... arguments) {
+        if (target.isTraceEnabled()) {
+            log(AsyncLogDispatcher.TRACE, null, format, arguments, null);
+        }
+    }
+
+    public void trace(String msg, Throwable t) {
+        if (target.isTraceEnabled()) {
+            log(AsyncLogDispatcher.TRACE, null, msg, null, t);
+        }
+    }
+
+    public boolean isTraceEnabled(Marker marker) {
+        return target.isTraceEnabled(marker);
+    }
+
+    public void trace(Marker marker, String msg) {
+        if (target.isTraceEnabled(marker)) {
+            log(AsyncLogDispatcher.TRACE, marker, msg, null, null);
+        }
+    }
+
+    public void trace(Marker marker, String format, Object arg) {
+        if (target.isTraceEnabled(marker)) {
+            log(AsyncLogDispatcher.TRACE, marker, format, new Object[] {arg}, null);
+        }
+    }
+
+    public void trace(Marker marker, String format, Object arg1, Object arg2) {
+        if (target.isTraceEnabled(marker)) {
+            log(AsyncLogDispatcher.TRACE, marker, format, new Object[] {arg1, arg2}, null);
+        }
+    }
+
+    public void trace(Marker marker, String format, Object... arguments) {
+        if (target.isTraceEnabled(marker)) {
+            log(AsyncLogDispatcher.TRACE, marker, format, arguments, null);
+        }
+    }
+
+    public void trace(Marker marker, String msg, Throwable t) {
+        if (target.isTraceEnabled(marker)) {
+            log(AsyncLogDispatcher.TRACE, marker, msg, null, t);
+        }
+    }
+
+    public boolean isDebugEnabled() {
+        return target.isDebugEnabled();
+    }
+
+    public void debug(String msg) {
+        if (target.isDebugEnabled()) {
+            log(AsyncLogDispatcher.DEBUG, null, msg, null, null);
+        }
+    }
+
+    public void debug(String format, Object arg) {
+        if (target.isDebugEnabled()) {
+            log(AsyncLogDispatcher.DEBUG, null, format, new Object[] {arg}, null);
+        }
+    }
+
+    public void debug(String format, Object arg1, Object arg2) {
+        if (target.isDebugEnabled()) {
+            log(AsyncLogDispatcher.DEBUG, null, format, new Object[] {arg1, arg2}, null);
+        }
+    }
+
+    public void debug(String format, Object... arguments) {
+        if (target.isDebugEnabled()) {
+            log(AsyncLogDispatcher.DEBUG, null, format, arguments, null);
+        }
+    }
+
+    public void debug(String msg, Throwable t) {
+        if (target.isDebugEnabled()) {
+            log(AsyncLogDispatcher.DEBUG, null, msg, null, t);
+        }
+    }
+
+    public boolean isDebugEnabled(Marker marker) {
+        return target.isDebugEnabled(marker);
+    }
+
+    public void debug(Marker marker, String msg) {
+        if (target.isDebugEnabled(marker)) {
+            log(AsyncLogDispatcher.DEBUG, marker, msg, null, null);
+        }
+    }
+
+    public void debug(Marker marker, String format, Object arg) {
+        if (target.isDebugEnabled(marker)) {
+            log(AsyncLogDispatcher.DEBUG, marker, format, new Object[] {arg}, null);
+        }
+    }
+
+    public void debug(Marker marker, String format, Object arg1, Object arg2) {
+        if (target.isDebugEnabled(marker)) {
+            log(AsyncLogDispatcher.DEBUG, marker, format, new Object[] {arg1, arg2}, null);
+        }
+    }
+
+    public void debug(Marker marker, String format, Object... arguments) {
+        if (target.isDebugEnabled(marker)) {
+            log(AsyncLogDispatcher.DEBUG, marker, format, arguments, null);
+        }
+    }
+
+    public void debug(Marker marker, String msg, Throwable t) {
+        if (target.isDebugEnabled(marker)) {
+            log(AsyncLogDispatcher.DEBUG, marker, msg, null, t);
+        }
+    }
+
+    public boolean isInfoEnabled() {
+        return target.isInfoEnabled();
+    }
+
+    public void info(String msg) {
+        if (target.isInfoEnabled()) {
+            log(AsyncLogDispatcher.INFO, null, msg, null, null);
+        }
+    }
+
+    public void info(String format, Object arg) {
+        if (target.isInfoEnabled()) {
+            log(AsyncLogDispatcher.INFO, null, format, new Object[] {arg}, null);
+        }
+    }
+
+    public void info(String format, Object arg1, Object arg2) {
+        if (target.isInfoEnabled()) {
+            log(AsyncLogDispatcher.INFO, null, format, new Object[] {arg1, arg2}, null);
+        }
+    }
+
+    public void info(String format, Object... arguments) {
+        if (target.isInfoEnabled()) {
+            log(AsyncLogDispatcher.INFO, null, format, arguments, null);
+        }
+    }
+
+    public void info(String msg, Throwable t) {
+        if (target.isInfoEnabled()) {
+            log(AsyncLogDispatcher.INFO, null, msg, null, t);
+        }
+    }
+
+    public boolean isInfoEnabled(Marker marker) {
+        return target.isInfoEnabled(marker);
+    }
+
+    public void info(Marker marker, String msg) {
+        if (target.isInfoEnabled(marker)) {
+            log(AsyncLogDispatcher.INFO, marker, msg, null, null);
+        }
+    }
+
+    public void info(Marker marker, String format, Object arg) {
+        if (target.isInfoEnabled(marker)) {
+            log(AsyncLogDispatcher.INFO, marker, format, new Object[] {arg}, null);
+        }
+    }
+
+    public void info(Marker marker, String format, Object arg1, Object arg2) {
+        if (target.isInfoEnabled(marker)) {
+            log(AsyncLogDispatcher.INFO, marker, format, new Object[] {arg1, arg2}, null);
+        }
+    }
+
+    public void info(Marker marker, String format, Object... arguments) {
+        if (target.isInfoEnabled(marker)) {
+            log(AsyncLogDispatcher.INFO, marker, format, arguments, null);
+        }
+    }
+
+    public void info(Marker marker, String msg, Throwable t) {
+        if (target.isInfoEnabled(marker)) {
+            log(AsyncLogDispatcher.INFO, marker, msg, null, t);
+        }
+    }
+
+    public boolean isWarnEnabled() {
+        return target.isWarnEnabled();
+    }
+
+    public void warn(String msg) {
+        if (target.isWarnEnabled()) {
+            log(AsyncLogDispatcher.WARN, null, msg, null, null);
+        }
+    }
+
+    public void warn(String format, Object arg) {
+        if (target.isWarnEnabled()) {
+            log(AsyncLogDispatcher.WARN, null, format, new Object[] {arg}, null);
+        }
+    }
+
+    public void warn(String format, Object arg1, Object arg2) {
+        if (target.isWarnEnabled()) {
+            log(AsyncLogDispatcher.WARN, null, format, new Object[] {arg1, arg2}, null);
+        }
+    }
+
+    public void warn(String format, Object... arguments) {
+        if (target.isWarnEnabled()) {
+            log(AsyncLogDispatcher.WARN, null, format, arguments, null);
+        }
+    }
+
+    public void warn(String msg, Throwable t) {
+        if (target.isWarnEnabled()) {
+            log(AsyncLogDispatcher.WARN, null, msg, null, t);
+        }
+    }
+
+    public boolean isWarnEnabled(Marker marker) {
+        return target.isWarnEnabled(marker);
+    }
+
+    public void warn(Marker marker, String msg) {
+        if (target.isWarnEnabled(marker)) {
+            log(AsyncLogDispatcher.WARN, marker, msg, null, null);
+        }
+    }
+
+    public void warn(Marker marker, String format, Object arg) {
+        if (target.isWarnEnabled(marker)) {
+            log(AsyncLogDispatcher.WARN, marker, format, new Object[] {arg}, null);
+        }
+    }
+
+    public void warn(Marker marker, String format, Object arg1, Object arg2) {
+        if (target.isWarnEnabled(marker)) {
+            log(AsyncLogDispatcher.WARN, marker, format, new Object[] {arg1, arg2}, null);
+        }
+    }
+
+    public void warn(Marker marker, String format, Object... arguments) {
+        if (target.isWarnEnabled(marker)) {
+            log(AsyncLogDispatcher.WARN, marker, format, arguments, null);
+        }
+    }
+
+    public void warn(Marker marker, String msg, Throwable t) {
+        if (target.isWarnEnabled(marker)) {
+            log(AsyncLogDispatcher.WARN, marker, msg, null, t);
+        }
+    }
+
+    public boolean isErrorEnabled() {
+        return target.isErrorEnabled();
+    }
+
+    public void error(String msg) {
+        if (target.isErrorEnabled()) {
+            log(AsyncLogDispatcher.ERROR, null, msg, null, null);
+        }
+    }
+
+    public void error(String format, Object arg) {
+        if (target.isErrorEnabled()) {
+            log(AsyncLogDispatcher.ERROR, null, format, new Object[] {arg}, null);
+        }
+    }
+
+    public void error(String format, Object arg1, Object arg2) {
+        if (target.isErrorEnabled()) {
+            log(AsyncLogDispatcher.ERROR, null, format, new Object[] {arg1, arg2}, null);
+        }
+    }
+
+    public void error(String format, Object... arguments) {
+        if (target.isErrorEnabled()) {
+            log(AsyncLogDispatcher.ERROR, null, format, arguments, null);
+        }
+    }
+
+    public void error(String msg, Throwable t) {
+        if (target.isErrorEnabled()) {
+            log(AsyncLogDispatcher.ERROR, null, msg, null, t);
+        }
+    }
+
+    public boolean isErrorEnabled(Marker marker) {
+        return target.isErrorEnabled(marker);
+    }
+
+    public void error(Marker marker, String msg) {
+        if (target.isErrorEnabled(marker)) {
+            log(AsyncLogDispatcher.ERROR, marker, msg, null, null);
+        }
+    }
+
+    public void error(Marker marker, String format, Object arg) {
+        if (target.isErrorEnabled(marker)) {
+            log(AsyncLogDispatcher.ERROR, marker, format, new Object[] {arg}, null);
+        }
+    }
+
+    public void error(Marker marker, String format, Object arg1, Object arg2) {
+        if (target.isErrorEnabled(marker)) {
+            log(AsyncLogDispatcher.ERROR, marker, format, new Object[] {arg1, arg2}, null);
+        }
+    }
+
+    public void error(Marker marker, String format, Object... arguments) {
+        if (target.isErrorEnabled(marker)) {
+            log(AsyncLogDispatcher.ERROR, marker, format, arguments, null);
+        }
+    }
+
+    public void error(Marker marker, String msg, Throwable t) {
+        if (target.isErrorEnabled(marker)) {
+            log(AsyncLogDispatcher.ERROR, marker, msg, null, t);
+        }
+    }
+}
@@ -0,0 +1,290 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 把 {@link BinaryLogWriter} 写的分段文件还原成文本，格式和一般的文本日志差不多：
+ * <pre>
+ *   2026-10-18 12:00:00.123 [线程] INFO  logger名 - [tag] 内容
+ * </pre>
+ * 用法：<tt>java [-Dblog.separator=分隔] BinaryLogDecoder 目录或文件...</tt>，目录下的分段按编号顺序解码，结果打到标准输出。
+ * 分段末尾写了一半的记录跳过，一个分段读不了也接着解码后面的，有问题的分段打到标准错误。
+ */
+public class BinaryLogDecoder {
+
+    /** tag和内容之间的分隔，和写日志时的 Logger.separator 一致，用 -Dblog.separator 指定 */
+    private static final String SEPARATOR = System.getProperty("blog.separator", " ");
+
+    private static final String[] LEVELS = {"TRACE", "DEBUG", "INFO ", "WARN ", "ERROR"};
+
+    /** 编号到字符串，跨分段共用 */
+    private final Map<Integer, String> dictionary = new HashMap<>();
+
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+
+    private final PrintStream out;
+
+    public BinaryLogDecoder(PrintStream out) {
+        this.out = out;
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("用法: java BinaryLogDecoder 目录或文件...");
+            System.exit(1);
+        }
+        BinaryLogDecoder decoder = new BinaryLogDecoder(System.out);
+        boolean failed = false;
+        for (String arg : args) {
+            List<Path> files;
+            try {
+                files = segments(Paths.get(arg));
+            } catch (IOException e) {
+                System.err.println("读不了 " + arg + ": " + e);
+                failed = true;
+                continue;
+            }
+            for (Path file : files) {
+                try {
+                    decoder.decode(file);
+                } catch (IOException e) {
+                    System.err.println("跳过 " + file + ": " + e.getMessage());
+                    failed = true;
+                }
+            }
+        }
+        System.out.flush();
+        if (failed) {
+            System.exit(2);
+        }
+    }
+
+    /**
+     * 目录下的分段按文件名排序，就是写入的顺序
+     */
+    static List<Path> segments(Path path) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (Files.isDirectory(path)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, "log-*" + BinaryLogWriter.SUFFIX)) {
+                for (Path file : stream) {
+                    files.add(file);
+                }
+            }
+            Collections.sort(files);
+        } else {
+            files.add(path);
+        }
+        return files;
+    }
+
+    /**
+     * 解码一个分段。遇到写了一半的记录（进程在写的中途退出）就停下，前面解出来的照常输出
+     *
+     * @return 解出来的日志条数
+     * @throws IOException 读不了文件，或者不是二进制日志
+     */
+    public int decode(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.remaining() < BinaryLogWriter.HEADER_SIZE || buffer.getInt() != BinaryLogWriter.MAGIC) {
+            throw new IOException("不是二进制日志: " + file);
+        }
+        int version = buffer.getInt();
+        if (version != BinaryLogWriter.VERSION) {
+            throw new IOException("不支持的版本" + version + ": " + file);
+        }
+        int count = 0;
+        while (buffer.hasRemaining()) {
+            int start = buffer.position();
+            byte type = buffer.get();
+            if (type == BinaryLogWriter.END) {
+                break;
+            }
+            long length;
+            try {
+                length = getVarLong(buffer);
+            } catch (RuntimeException e) {
+                length = -1;
+            }
+            int end = buffer.position() + (int) length;
+            if (length < 0 || length >= buffer.remaining() || buffer.get(end) != BinaryLogWriter.COMMIT
+                    || (type != BinaryLogWriter.DEFINE && type != BinaryLogWriter.EVENT)) {
+                // 进程在写这条记录时退出了，后面不会再有完整的记录
+                System.err.println(file + ": 位置" + start + "的记录不完整，分段到此为止");
+                break;
+            }
+            ByteBuffer record = buffer.duplicate();
+            record.limit(end);
+            try {
+                if (type == BinaryLogWriter.DEFINE) {
+                    int id = (int) getVarLong(record);
+                    dictionary.put(id, new String(getBytes(record), StandardCharsets.UTF_8));
+                } else {
+                    out.println(event(record));
+                    count++;
+                }
+            } catch (RuntimeException e) {
+                // 记录本身是完整的，内容解不了就跳过这一条
+                System.err.println(file + ": 位置" + start + "的记录解不了: " + e);
+            }
+            buffer.position(end + 1);
+        }
+        return count;
+    }
+
+    private String event(ByteBuffer buffer) {
+        long time = getVarLong(buffer);
+        int level = buffer.get();
+        String logger = getString(buffer);
+        String thread = getString(buffer);
+        String tag = getString(buffer);
+        String format = getString(buffer);
+        int count = (int) getVarLong(buffer);
+        Object[] args = new Object[count];
+        for (int i = 0; i < count; i++) {
+            args[i] = getArg(buffer);
+        }
+
+        StringBuilder line = new StringBuilder();
+        line.append(dateFormat.format(new Date(time)))
+                .append(" [").append(thread).append("] ")
+                .append(level >= 0 && level < LEVELS.length ? LEVELS[level] : String.valueOf(level))
+                .append(' ').append(logger).append(" - ");
+        if (tag != null) {
+            line.append(tag).append(SEPARATOR);
+        }
+        format(line, format, args);
+        return line.toString();
+    }
+
+    /**
+     * 和slf4j一样替换{}，\{}不替换；最后一个参数是异常且没被{}用掉时，在后面打印堆栈
+     */
+    static void format(StringBuilder line, String format, Object[] args) {
+        if (format == null) {
+            line.append("null");
+            return;
+        }
+        int used = 0;
+        int start = 0;
+        while (true) {
+            int brace = format.indexOf("{}", start);
+            if (brace < 0 || used >= args.length) {
+                break;
+            }
+            if (brace > 0 && format.charAt(brace - 1) == '\\') {
+                line.append(format, start, brace - 1).append("{}");
+            } else {
+                line.append(format, start, brace).append(args[used++]);
+            }
+            start = brace + 2;
+        }
+        line.append(format, start, format.length());
+        if (used < args.length && args[args.length - 1] instanceof ThrowableText) {
+            line.append(System.lineSeparator()).append(((ThrowableText) args[args.length - 1]).stackTrace.trim());
+        }
+    }
+
+    private Object getArg(ByteBuffer buffer) {
+        byte type = buffer.get();
+        switch (type) {
+            case BinaryLogWriter.ARG_NULL:
+                return null;
+            case BinaryLogWriter.ARG_LONG:
+                long zigzag = getVarLong(buffer);
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            case BinaryLogWriter.ARG_DOUBLE:
+                return Double.longBitsToDouble(getFixed(buffer, 8));
+            case BinaryLogWriter.ARG_FLOAT:
+                return Float.intBitsToFloat((int) getFixed(buffer, 4));
+            case BinaryLogWriter.ARG_TRUE:
+                return Boolean.TRUE;
+            case BinaryLogWriter.ARG_FALSE:
+                return Boolean.FALSE;
+            case BinaryLogWriter.ARG_CHAR:
+                return (char) getVarLong(buffer);
+            case BinaryLogWriter.ARG_STRING:
+                return new String(getBytes(buffer), StandardCharsets.UTF_8);
+            case BinaryLogWriter.ARG_THROWABLE:
+                String text = new String(getBytes(buffer), StandardCharsets.UTF_8);
+                return new ThrowableText(text, new String(getBytes(buffer), StandardCharsets.UTF_8));
+            default:
+                throw new IllegalStateException("无法识别的参数类型" + type);
+        }
+    }
+
+    /**
+     * 低位在前的定长整数
+     */
+    private static long getFixed(ByteBuffer buffer, int length) {
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            value |= (long) (buffer.get() & 0xFF) << (8 * i);
+        }
+        return value;
+    }
+
+    private String getString(ByteBuffer buffer) {
+        int id = (int) getVarLong(buffer);
+        if (id == 1) {
+            return null;
+        } else if (id == 0) {
+            return new String(getBytes(buffer), StandardCharsets.UTF_8);
+        }
+        String s = dictionary.get(id);
+        return s != null ? s : "#" + id;
+    }
+
+    private static byte[] getBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[(int) getVarLong(buffer)];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * 解出来的异常，{}里显示toString，放在最后时打印堆栈
+     */
+    private static final class ThrowableText {
+
+        final String text;
+        final String stackTrace;
+
+        ThrowableText(String text, String stackTrace) {
+            this.text = text;
+            this.stackTrace = stackTrace;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+}
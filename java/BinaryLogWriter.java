@@ -0,0 +1,478 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 二进制日志。Tag日志不再交给slf4j去替换{}，而是把(Tag, format, 原始参数)编码成紧凑的记录，
+ * 写进内存映射的分段文件，事后用 {@link BinaryLogDecoder} 还原成文本。
+ * <p>
+ * format、Tag、logger名、线程名都放进字典，每条记录里只写编号，整数用zigzag varint。
+ * 每个分段文件开头是魔数和版本，之后是一条条记录，类型0表示结束。每条记录是
+ * 类型, varint 内容长度, 内容, {@link #COMMIT}，内容是：
+ * <pre>
+ *   DEFINE: varint 编号, varint 长度, UTF-8
+ *   EVENT:  varlong 毫秒时间, 等级, varint logger, varint 线程, varint tag, varint format,
+ *           varint 参数个数, 参数...
+ * </pre>
+ * 编号0表示字典满了，后面直接跟字符串，编号1表示null。字典的定义在每个分段里用到之前都会重新写一遍，
+ * 所以单个分段也能解码。
+ * <p>
+ * 类型字节最后写，进程在写一条记录的中途退出时，这条记录的类型还是0，或者结尾没有提交标记，
+ * 解码时就知道分段到这里为止，前面的记录照样能用。
+ */
+public class BinaryLogWriter {
+
+    /** "BLG1" */
+    static final int MAGIC = 0x424c4731;
+
+    static final int VERSION = 2;
+
+    static final int HEADER_SIZE = 8;
+
+    static final byte END = 0;
+    static final byte DEFINE = 1;
+    static final byte EVENT = 2;
+
+    /** 每条记录最后的提交标记 */
+    static final byte COMMIT = (byte) 0xC3;
+
+    static final byte ARG_NULL = 0;
+    static final byte ARG_LONG = 1;
+    static final byte ARG_DOUBLE = 2;
+    static final byte ARG_FLOAT = 3;
+    static final byte ARG_TRUE = 4;
+    static final byte ARG_FALSE = 5;
+    static final byte ARG_CHAR = 6;
+    static final byte ARG_STRING = 7;
+    static final byte ARG_THROWABLE = 8;
+
+    static final String SUFFIX = ".blog";
+
+    /** 字典最多多少条，超过以后字符串直接写在记录里 */
+    static final int MAX_DICTIONARY = 65536;
+
+    /** 当前生效的实例，没开二进制日志时为null */
+    private static volatile BinaryLogWriter installed;
+
+    private final Path dir;
+
+    private final int segmentSize;
+
+    /** 字符串到编号，从2开始 */
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+
+    /** 编号到UTF-8，下标是编号 */
+    private final List<byte[]> strings = new ArrayList<>();
+
+    /** 当前分段里已经定义过的编号 */
+    private final BitSet defined = new BitSet();
+
+    private final ThreadLocal<Encoder> encoders = ThreadLocal.withInitial(Encoder::new);
+
+    private final LongAdder written = new LongAdder();
+
+    private final LongAdder dropped = new LongAdder();
+
+    private MappedByteBuffer buffer;
+
+    private int segmentIndex;
+
+    private boolean closed;
+
+    /**
+     * @param dir 分段文件所在的目录，接着目录里已有的最大编号往后写
+     * @param segmentSize 每个分段文件的大小
+     * @throws IOException 建不了目录或者第一个分段时
+     */
+    public BinaryLogWriter(Path dir, int segmentSize) throws IOException {
+        if (segmentSize < 1024) {
+            throw new IllegalArgumentException("segmentSize至少1024");
+        }
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        // 0和1是保留的编号
+        strings.add(null);
+        strings.add(null);
+        Files.createDirectories(dir);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "log-*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    int index = Integer.parseInt(name.substring(4, name.length() - SUFFIX.length()));
+                    segmentIndex = Math.max(segmentIndex, index);
+                } catch (NumberFormatException e) {
+                    // 不是我们的文件
+                }
+            }
+        }
+        roll();
+    }
+
+    /**
+     * 打开二进制日志，替换掉之前的实例
+     */
+    static synchronized void install(BinaryLogWriter writer) {
+        BinaryLogWriter previous = installed;
+        installed = writer;
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    /**
+     * 关掉二进制日志
+     */
+    static synchronized void uninstall() {
+        install(null);
+    }
+
+    /**
+     * @return 当前生效的实例，没开二进制日志时为null
+     */
+    static BinaryLogWriter installed() {
+        return installed;
+    }
+
+    /**
+     * 开了二进制日志就写进去
+     *
+     * @return false表示没开或者写失败了，调用方照常走slf4j
+     */
+    static boolean write(int level, org.slf4j.Logger logger, Tag tag, String format, Object[] args,
+            Throwable throwable) {
+        BinaryLogWriter writer = installed;
+        return writer != null && writer.append(level, logger.getName(), tag, format, args, throwable);
+    }
+
+    /**
+     * 写一条日志。编码在锁外面做，锁里面只补字典定义和拷贝字节
+     *
+     * @return false表示写失败了
+     */
+    boolean append(int level, String loggerName, Tag tag, String format, Object[] args, Throwable throwable) {
+        Encoder encoder = encoders.get();
+        encoder.reset();
+        encoder.putVarLong(System.currentTimeMillis());
+        encoder.put((byte) level);
+        encoder.putString(loggerName, 0);
+        encoder.putString(Thread.currentThread().getName(), 1);
+        encoder.putString(tag == null ? null : tag.toString(), 2);
+        encoder.putString(format, 3);
+        int count = (args == null ? 0 : args.length) + (throwable == null ? 0 : 1);
+        encoder.putVarLong(count);
+        if (args != null) {
+            for (Object arg : args) {
+                encoder.putArg(arg);
+            }
+        }
+        if (throwable != null) {
+            encoder.putArg(throwable);
+        }
+
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+            try {
+                int needed = recordSize(encoder.size) + definitionSize(encoder.ids);
+                if (needed > buffer.remaining()) {
+                    if (recordSize(encoder.size) + definitionSize(encoder.ids, true) > segmentSize - HEADER_SIZE - 1) {
+                        // 一个分段都放不下，交回slf4j
+                        dropped.increment();
+                        return false;
+                    }
+                    roll();
+                }
+                for (int id : encoder.ids) {
+                    if (id > 1 && !defined.get(id)) {
+                        byte[] bytes = strings.get(id);
+                        int start = buffer.position();
+                        buffer.position(start + 1);
+                        putVarLong(buffer, varLongSize(id) + varLongSize(bytes.length) + bytes.length);
+                        putVarLong(buffer, id);
+                        putVarLong(buffer, bytes.length);
+                        buffer.put(bytes);
+                        buffer.put(COMMIT);
+                        buffer.put(start, DEFINE);
+                        defined.set(id);
+                    }
+                }
+                int start = buffer.position();
+                buffer.position(start + 1);
+                putVarLong(buffer, encoder.size);
+                buffer.put(encoder.bytes, 0, encoder.size);
+                buffer.put(COMMIT);
+                // 类型最后写，有了类型说明整条记录都写好了
+                buffer.put(start, EVENT);
+                written.increment();
+                return true;
+            } catch (IOException e) {
+                dropped.increment();
+                return false;
+            }
+        }
+    }
+
+    private int definitionSize(int[] used) {
+        return definitionSize(used, false);
+    }
+
+    private int definitionSize(int[] used, boolean all) {
+        int size = 0;
+        for (int i = 0; i < used.length; i++) {
+            int id = used[i];
+            if (id > 1 && (all || !defined.get(id)) && indexOf(used, id) == i) {
+                int length = strings.get(id).length;
+                size += recordSize(varLongSize(id) + varLongSize(length) + length);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 内容长度为length的记录一共占多少字节：类型、长度、内容、提交标记
+     */
+    private static int recordSize(int length) {
+        return 1 + varLongSize(length) + length + 1;
+    }
+
+    private static int indexOf(int[] values, int value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 换一个新的分段文件，字典在新分段里要重新定义
+     */
+    private void roll() throws IOException {
+        if (buffer != null) {
+            buffer.force();
+        }
+        Path file = dir.resolve(String.format("log-%06d%s", ++segmentIndex, SUFFIX));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        buffer.putInt(MAGIC).putInt(VERSION);
+        // 留一个字节给结束标记
+        buffer.limit(segmentSize - 1);
+        defined.clear();
+    }
+
+    /**
+     * 字符串的编号，字典满了返回0
+     */
+    private int id(String s) {
+        Integer id = ids.get(s);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(s);
+            if (id != null) {
+                return id;
+            }
+            if (strings.size() > MAX_DICTIONARY) {
+                return 0;
+            }
+            id = strings.size();
+            strings.add(s.getBytes(StandardCharsets.UTF_8));
+            ids.put(s, id);
+            return id;
+        }
+    }
+
+    /**
+     * 把写过的内容刷到磁盘，之后不再接收日志
+     */
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            buffer.force();
+        }
+    }
+
+    /**
+     * @return 写进去的条数
+     */
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    /**
+     * @return 因为太大或者写文件失败没写进去、交回slf4j的条数
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return 当前分段的编号
+     */
+    public synchronized int getSegmentIndex() {
+        return segmentIndex;
+    }
+
+    static int varLongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    static void putVarLong(MappedByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * 每个线程一个，编码一条记录用，反复使用
+     */
+    private final class Encoder {
+
+        byte[] bytes = new byte[256];
+        int size;
+
+        /** 这条记录用到的编号：logger、线程、tag、format */
+        final int[] ids = new int[4];
+
+        void reset() {
+            size = 0;
+            Arrays.fill(ids, 0);
+        }
+
+        void ensure(int length) {
+            if (size + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + length));
+            }
+        }
+
+        void put(byte b) {
+            ensure(1);
+            bytes[size++] = b;
+        }
+
+        void putVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void putZigZag(long value) {
+            putVarLong((value << 1) ^ (value >> 63));
+        }
+
+        void putBytes(byte[] b) {
+            putVarLong(b.length);
+            ensure(b.length);
+            System.arraycopy(b, 0, bytes, size, b.length);
+            size += b.length;
+        }
+
+        /**
+         * 字典里的字符串写编号，null写1，字典满了写0再跟字符串
+         */
+        void putString(String s, int slot) {
+            if (s == null) {
+                putVarLong(1);
+                return;
+            }
+            int id = id(s);
+            ids[slot] = id;
+            putVarLong(id);
+            if (id == 0) {
+                putBytes(s.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        void putArg(Object arg) {
+            if (arg == null) {
+                put(ARG_NULL);
+            } else if (arg instanceof Long || arg instanceof Integer || arg instanceof Short
+                    || arg instanceof Byte) {
+                put(ARG_LONG);
+                putZigZag(((Number) arg).longValue());
+            } else if (arg instanceof Double) {
+                put(ARG_DOUBLE);
+                putFixed(Double.doubleToRawLongBits((Double) arg), 8);
+            } else if (arg instanceof Float) {
+                put(ARG_FLOAT);
+                putFixed(Float.floatToRawIntBits((Float) arg), 4);
+            } else if (arg instanceof Boolean) {
+                put((Boolean) arg ? ARG_TRUE : ARG_FALSE);
+            } else if (arg instanceof Character) {
+                put(ARG_CHAR);
+                putVarLong((Character) arg);
+            } else if (arg instanceof Throwable) {
+                put(ARG_THROWABLE);
+                StringWriter trace = new StringWriter();
+                ((Throwable) arg).printStackTrace(new PrintWriter(trace));
+                putBytes(arg.toString().getBytes(StandardCharsets.UTF_8));
+                putBytes(trace.toString().getBytes(StandardCharsets.UTF_8));
+            } else {
+                put(ARG_STRING);
+                putBytes(render(arg).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        void putFixed(long value, int length) {
+            ensure(length);
+            for (int i = 0; i < length; i++) {
+                bytes[size++] = (byte) (value >>> (8 * i));
+            }
+        }
+    }
+
+    /**
+     * 和slf4j一样，数组显示成[a, b]
+     */
+    private static String render(Object arg) {
+        if (!arg.getClass().isArray()) {
+            return String.valueOf(arg);
+        }
+        if (arg instanceof Object[]) {
+            return Arrays.deepToString((Object[]) arg);
+        } else if (arg instanceof int[]) {
+            return Arrays.toString((int[]) arg);
+        } else if (arg instanceof long[]) {
+            return Arrays.toString((long[]) arg);
+        } else if (arg instanceof byte[]) {
+            return Arrays.toString((byte[]) arg);
+        } else if (arg instanceof short[]) {
+            return Arrays.toString((short[]) arg);
+        } else if (arg instanceof char[]) {
+            return Arrays.toString((char[]) arg);
+        } else if (arg instanceof boolean[]) {
+            return Arrays.toString((boolean[]) arg);
+        } else if (arg instanceof float[]) {
+            return Arrays.toString((float[]) arg);
+        } else {
+            return Arrays.toString((double[]) arg);
+        }
+    }
+}
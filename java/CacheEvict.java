@@ -0,0 +1,35 @@
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+
+/**
+ * Marks an interface method that changes data cached by a
+ * {@link CachingProxy}. After the method returns normally, the key derived
+ * from its arguments is removed from the given regions, or the regions are
+ * cleared completely.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface CacheEvict {
+
+    /**
+     * @return the names of the regions to evict from.
+     */
+    String[] regions();
+
+    /**
+     * @return the positions of the arguments that make up the key, by
+     *      default all of them. Must select the same values as the key of the
+     *      cached method.
+     */
+    int[] keyArgs() default {};
+
+    /**
+     * @return true to clear the regions instead of removing a single key.
+     */
+    boolean allEntries() default false;
+}
@@ -0,0 +1,154 @@
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+
+/**
+ * Shared daemon scheduler for background cache work such as expiry sweeps.
+ * All caches share a single thread, so enabling background maintenance on
+ * many caches does not multiply the number of threads.<p>
+ *
+ * Tasks only hold a weak reference to their cache. Once a cache becomes
+ * unreachable its task cancels itself, so forgetting to stop a task does not
+ * keep the cache alive.
+ */
+public final class CacheMaintenance {
+
+    /**
+     * The shared scheduler, created on first use.
+     */
+    private static volatile ScheduledExecutorService executor;
+
+    /**
+     * The scheduler for checkpoints, created on first use.
+     */
+    private static volatile ScheduledExecutorService checkpointExecutor;
+
+    private CacheMaintenance() {
+    }
+
+    /**
+     * Returns the shared daemon scheduler.
+     *
+     * @return the scheduler used for cache maintenance.
+     */
+    public static ScheduledExecutorService executor() {
+        ScheduledExecutorService result = executor;
+        if (result == null) {
+            synchronized (CacheMaintenance.class) {
+                result = executor;
+                if (result == null) {
+                    result = Executors.newSingleThreadScheduledExecutor(r -> {
+                        Thread thread = new Thread(r, "cache-maintenance");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    executor = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the daemon scheduler that writes cache checkpoints. Writing a
+     * snapshot encodes every entry and waits for the disk, so it runs on a
+     * thread of its own and does not hold up sweeps and evictions.
+     *
+     * @return the scheduler used for checkpoints.
+     */
+    public static ScheduledExecutorService checkpointExecutor() {
+        ScheduledExecutorService result = checkpointExecutor;
+        if (result == null) {
+            synchronized (CacheMaintenance.class) {
+                result = checkpointExecutor;
+                if (result == null) {
+                    result = Executors.newSingleThreadScheduledExecutor(r -> {
+                        Thread thread = new Thread(r, "cache-checkpoint");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    checkpointExecutor = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creates a bounded pool of daemon threads for asynchronous cache reloads.
+     * When all threads are busy and the queue is full, new tasks are rejected
+     * instead of piling up, so a slow backend cannot make refreshes queue
+     * without limit.
+     *
+     * @param threads the number of threads.
+     * @param queueSize the number of reloads that may wait for a thread.
+     * @return the executor.
+     */
+    public static ExecutorService newRefreshExecutor(int threads, int queueSize) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), r -> {
+                    Thread thread = new Thread(r, "cache-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Runs the task against the target every period milliseconds, until the
+     * target is garbage collected or the returned future is cancelled.
+     * Exceptions thrown by the task are printed and do not stop the schedule.
+     *
+     * @param target the object the task works on, typically a cache.
+     * @param periodMillis the time between two runs in milliseconds.
+     * @param task the work to do.
+     * @param <T> <T>
+     * @return the future of the scheduled task.
+     */
+    public static <T> ScheduledFuture<?> schedule(T target, long periodMillis, Consumer<? super T> task) {
+        return schedule(executor(), target, periodMillis, task);
+    }
+
+    /**
+     * Runs the task against the target on the given scheduler, like
+     * {@link #schedule(Object, long, Consumer)}.
+     *
+     * @param scheduler the scheduler to run the task on.
+     * @param target the object the task works on, typically a cache.
+     * @param periodMillis the time between two runs in milliseconds.
+     * @param task the work to do.
+     * @param <T> <T>
+     * @return the future of the scheduled task.
+     */
+    public static <T> ScheduledFuture<?> schedule(ScheduledExecutorService scheduler, T target, long periodMillis,
+            Consumer<? super T> task) {
+        final WeakReference<T> ref = new WeakReference<>(target);
+        final AtomicReference<ScheduledFuture<?>> self = new AtomicReference<>();
+        ScheduledFuture<?> future = scheduler.scheduleWithFixedDelay(() -> {
+            T t = ref.get();
+            if (t == null) {
+                ScheduledFuture<?> f = self.get();
+                if (f != null) {
+                    f.cancel(false);
+                }
+                return;
+            }
+            try {
+                task.accept(t);
+            } catch (RuntimeException e) {
+                System.out.println("Cache maintenance task failed: " + e.getMessage());
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        self.set(future);
+        return future;
+    }
+}
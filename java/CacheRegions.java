@@ -0,0 +1,94 @@
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * Named {@link DefaultCache} regions shared by the {@link CachingProxy}
+ * instances built with it, so that a write method on one interface can evict
+ * results cached by another. Regions are created on first use, with the
+ * settings given to {@link #configure(String, long, long)} or the defaults.
+ */
+public class CacheRegions {
+
+    /**
+     * Maximum number of entries of a region that was not configured.
+     */
+    public static final long DEFAULT_MAX_ENTRIES = 10000;
+
+    private final ConcurrentHashMap<String, DefaultCache<Object, Object>> regions = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, long[]> settings = new ConcurrentHashMap<>();
+
+    private final long defaultMaxLifetime;
+
+    /**
+     * @param defaultMaxLifetime the maximum lifetime of regions that were not
+     *      configured, -1 means their entries never expire.
+     */
+    public CacheRegions(long defaultMaxLifetime) {
+        this.defaultMaxLifetime = defaultMaxLifetime;
+    }
+
+    /**
+     * Sets the size and lifetime of a region. Has no effect on a region that
+     * already exists.
+     *
+     * @param name the name of the region.
+     * @param maxEntries the maximum number of entries, -1 for no limit.
+     * @param maxLifetime the maximum lifetime of the entries in milliseconds,
+     *      -1 means they never expire.
+     * @return this
+     */
+    public CacheRegions configure(String name, long maxEntries, long maxLifetime) {
+        settings.put(name, new long[] {maxEntries, maxLifetime});
+        return this;
+    }
+
+    /**
+     * Returns a region, creating it if needed. Every entry of a region counts
+     * as one towards its maximum size.
+     *
+     * @param name the name of the region.
+     * @return the region.
+     */
+    public DefaultCache<Object, Object> region(String name) {
+        return regions.computeIfAbsent(name, n -> {
+            long[] s = settings.get(n);
+            return new DefaultCache<>(n, s == null ? DEFAULT_MAX_ENTRIES : s[0],
+                    s == null ? defaultMaxLifetime : s[1], (key, value) -> 1);
+        });
+    }
+
+    /**
+     * Removes a key from a region.
+     *
+     * @param name the name of the region.
+     * @param key the key, as derived by the {@link CachingProxy}.
+     */
+    public void evict(String name, Object key) {
+        DefaultCache<Object, Object> region = regions.get(name);
+        if (region != null) {
+            region.remove(key);
+        }
+    }
+
+    /**
+     * Removes every entry from a region.
+     *
+     * @param name the name of the region.
+     */
+    public void clear(String name) {
+        DefaultCache<Object, Object> region = regions.get(name);
+        if (region != null) {
+            region.clear();
+        }
+    }
+
+    /**
+     * @param name the name of the region.
+     * @return the statistics of the region, or null if it was never used.
+     */
+    public CacheStats stats(String name) {
+        DefaultCache<Object, Object> region = regions.get(name);
+        return region == null ? null : region.stats();
+    }
+}
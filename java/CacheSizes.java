@@ -1,6 +1,4 @@
 import java.io.OutputStream;
-import java.lang.reflect.Field;
-import java.lang.reflect.Modifier;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
@@ -176,80 +174,31 @@ public class CacheSizes {
     }
     
     /**
-     * 简单类型元素长度
-     * @param clazz clazz
-     * @return  int
+     * Walks object graphs for {@link #sizeof(Object)}.
      */
-    private static int sizeofPrimitiveClass(Class<?> clazz) {
-        return clazz == boolean.class || clazz == byte.class ? 1 : clazz == char.class || clazz == short.class ? 2
-                : clazz == int.class || clazz == float.class ? 4 : 8;
-    }
-    
-    /**
-     * 简单类型数组长度
-     * @param object object
-     * @return int 
-     */
-    private static int lengthOfPrimitiveArray(Object object) {
-
-        Class<?> clazz = object.getClass();
-
-        return clazz == boolean[].class ? ((boolean[]) object).length
-                : clazz == byte[].class ? ((byte[]) object).length
-                : clazz == char[].class ? ((char[]) object).length : clazz == short[].class ? ((short[]) object).length
-                : clazz == int[].class ? ((int[]) object).length : clazz == float[].class ? ((float[]) object).length
-                : clazz == long[].class ? ((long[]) object).length : ((double[]) object).length;
-    }
+    private static volatile ObjectSizeEstimator estimator =
+            new ObjectSizeEstimator(ObjectSizeEstimator.DEFAULT_MAX_DEPTH);
 
     /**
-     * 构造器函数
-     * @param object object
-     * @param field field
-     * @return int
+     * Sets how many references deep {@link #sizeof(Object)} follows an
+     * object graph.
+     *
+     * @param maxDepth the maximum depth, 0 only measures the object itself.
      */
-    private static int sizeofConstructor(Object object, Field field) {
-        throw new UnsupportedOperationException("field type Constructor not accessible: " + object.getClass() + " field:" + field);
+    public static void setMaxDepth(int maxDepth) {
+        estimator = new ObjectSizeEstimator(maxDepth);
     }
 
     /**
-     * 对象大小
-     * @param object object
-     * @return int
+     * Returns the size in bytes of an object and the objects it references,
+     * up to the depth set by {@link #setMaxDepth(int)}. The layout of every
+     * class is computed once and cached, see {@link ObjectSizeEstimator}.
+     *
+     * @param object the object to determine the size of.
+     * @return the size of the object graph, at most Integer.MAX_VALUE.
      */
     public static int sizeof(Object object) {
-        if (object == null)
-            return 0;
-        int size = 8;
-        Class<?> clazz = object.getClass();
-        if (clazz.isArray()) {
-            size += 16; // length变量是int型
-            Class<?> componentType = clazz.getComponentType();
-            if (componentType.isPrimitive())
-                return size + lengthOfPrimitiveArray(object) * sizeofPrimitiveClass(componentType);
-            Object[] array = (Object[]) object;
-            size += 4 * array.length;
-            for (Object o : array)
-                size += sizeof(o);
-            return size;
-        }
-        Field[] fields = clazz.getDeclaredFields();
-        for (Field field : fields) {
-            if (Modifier.isStatic(field.getModifiers()))
-                continue; // 类成员不计
-            Class<?> type = field.getType();
-            if (type.isPrimitive())
-                size += sizeofPrimitiveClass(type);
-            else {
-                size += 4; // 一个引用型变量占用4个字节
-                try {
-                    field.setAccessible(true); // 可以访问非public类型的变量
-                    size += sizeof(field.get(object));
-                } catch (Exception e) {
-                    size += sizeofConstructor(object, field);
-                }
-            }
-        }
-        return size;
+        return (int) Math.min(Integer.MAX_VALUE, estimator.sizeOf(object));
     }
 
     /**
@@ -0,0 +1,200 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * Binary file format of {@link DefaultCache} snapshots. The file starts with
+ * a magic number, the format version and the number of records; every record
+ * holds the encoded key and value and the two timestamps of the entry.
+ * Records are written and read through a {@link FileChannel} in chunks of
+ * {@link #CHUNK_SIZE} bytes, so neither side needs the whole file in memory.
+ */
+final class CacheSnapshotFile {
+
+    /**
+     * "DCS1"
+     */
+    static final int MAGIC = 0x44435331;
+
+    static final int VERSION = 1;
+
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Magic, version and record count.
+     */
+    private static final int HEADER_SIZE = 4 + 4 + 4;
+
+    private CacheSnapshotFile() {
+    }
+
+    /**
+     * Receives the records of a snapshot.
+     */
+    interface RecordConsumer {
+
+        /**
+         * @param key the encoded key.
+         * @param value the encoded value.
+         * @param timestamp the time the entry was added.
+         * @param expireTime the time the entry expires by its own lifetime,
+         *      -1 if it only uses the maximum lifetime of the cache.
+         */
+        void accept(byte[] key, byte[] value, long timestamp, long expireTime) throws IOException;
+    }
+
+    /**
+     * Writes a snapshot to a temporary file next to the target, and moves it
+     * into place on {@link #commit()}. Closing without committing deletes
+     * the temporary file and leaves the previous snapshot alone.
+     */
+    static final class Writer implements Closeable {
+
+        private final Path file;
+        private final Path tmp;
+        private final FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+        private int count;
+        private boolean committed;
+
+        Writer(Path file) throws IOException {
+            this.file = file;
+            Path dir = file.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            this.tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+            this.channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            // The record count is filled in on commit.
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(0);
+        }
+
+        void write(byte[] key, byte[] value, long timestamp, long expireTime) throws IOException {
+            int length = 4 + key.length + 4 + value.length + 8 + 8;
+            if (buffer.remaining() < length) {
+                flush();
+                if (buffer.capacity() < length) {
+                    buffer = ByteBuffer.allocate(length);
+                }
+            }
+            buffer.putInt(key.length).put(key).putInt(value.length).put(value)
+                    .putLong(timestamp).putLong(expireTime);
+            count++;
+        }
+
+        /**
+         * @return the number of records written so far.
+         */
+        int count() {
+            return count;
+        }
+
+        void commit() throws IOException {
+            flush();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(count).flip();
+            channel.write(header, 0);
+            channel.force(true);
+            channel.close();
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        public void close() throws IOException {
+            if (!committed) {
+                channel.close();
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+
+    /**
+     * Reads a snapshot, handing every record to the consumer in file order.
+     *
+     * @param file the snapshot file.
+     * @param consumer receives the records.
+     * @return the number of records in the file.
+     * @throws IOException if the file could not be read, is not a snapshot
+     *      or is truncated.
+     */
+    static int read(Path file, RecordConsumer consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Reader reader = new Reader(channel);
+            reader.require(HEADER_SIZE);
+            if (reader.buffer.getInt() != MAGIC) {
+                throw new IOException("Not a cache snapshot: " + file);
+            }
+            int version = reader.buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported cache snapshot version " + version + ": " + file);
+            }
+            int count = reader.buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                byte[] key = reader.bytes();
+                byte[] value = reader.bytes();
+                reader.require(16);
+                consumer.accept(key, value, reader.buffer.getLong(), reader.buffer.getLong());
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Refills a buffer from the channel whenever the next field is not
+     * completely in it.
+     */
+    private static final class Reader {
+
+        private final FileChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+
+        Reader(FileChannel channel) {
+            this.channel = channel;
+            buffer.flip();
+        }
+
+        void require(int length) throws IOException {
+            if (buffer.remaining() >= length) {
+                return;
+            }
+            if (buffer.capacity() < length) {
+                ByteBuffer larger = ByteBuffer.allocate(length);
+                larger.put(buffer);
+                buffer = larger;
+            } else {
+                buffer.compact();
+            }
+            while (buffer.position() < length) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Truncated cache snapshot");
+                }
+            }
+            buffer.flip();
+        }
+
+        byte[] bytes() throws IOException {
+            require(4);
+            int length = buffer.getInt();
+            // A damaged length must not make us allocate more than the file holds.
+            if (length < 0 || length > channel.size() - channel.position() + buffer.remaining()) {
+                throw new IOException("Corrupt cache snapshot");
+            }
+            require(length);
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/**
+ * Immutable snapshot of the statistics of a cache, as returned by
+ * {@link DefaultCache#stats()}.
+ */
+public final class CacheStats {
+
+    private final long hitCount;
+    private final long missCount;
+    private final long loadSuccessCount;
+    private final long loadFailureCount;
+    private final long totalLoadTime;
+    private final long[] removalCounts;
+    private final long evictedWeight;
+    private final long entryCount;
+    private final long totalWeight;
+    private final long[] evictionLatency;
+
+    CacheStats(long hitCount, long missCount, long loadSuccessCount, long loadFailureCount, long totalLoadTime,
+            long[] removalCounts, long evictedWeight, long entryCount, long totalWeight, long[] evictionLatency) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.loadSuccessCount = loadSuccessCount;
+        this.loadFailureCount = loadFailureCount;
+        this.totalLoadTime = totalLoadTime;
+        this.removalCounts = removalCounts;
+        this.evictedWeight = evictedWeight;
+        this.entryCount = entryCount;
+        this.totalWeight = totalWeight;
+        this.evictionLatency = evictionLatency;
+    }
+
+    /**
+     * @return the number of lookups that found a value.
+     */
+    public long hitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return the number of lookups that found nothing.
+     */
+    public long missCount() {
+        return missCount;
+    }
+
+    /**
+     * @return the share of lookups that found a value, 1 if there were none.
+     */
+    public double hitRate() {
+        long requests = hitCount + missCount;
+        return requests == 0 ? 1.0 : (double) hitCount / requests;
+    }
+
+    /**
+     * @return the number of loads that produced a value or null.
+     */
+    public long loadSuccessCount() {
+        return loadSuccessCount;
+    }
+
+    /**
+     * @return the number of loads that threw an exception.
+     */
+    public long loadFailureCount() {
+        return loadFailureCount;
+    }
+
+    /**
+     * @return the time spent loading, in nanoseconds.
+     */
+    public long totalLoadTime() {
+        return totalLoadTime;
+    }
+
+    /**
+     * @return the average time a load took in nanoseconds, 0 if there were none.
+     */
+    public double averageLoadPenalty() {
+        long loads = loadSuccessCount + loadFailureCount;
+        return loads == 0 ? 0.0 : (double) totalLoadTime / loads;
+    }
+
+    /**
+     * @param cause why the entries left the cache.
+     * @return the number of entries that left the cache for that reason.
+     */
+    public long removalCount(RemovalCause cause) {
+        return removalCounts[cause.ordinal()];
+    }
+
+    /**
+     * @return the number of entries evicted because the cache was too full.
+     */
+    public long evictionCount() {
+        return removalCount(RemovalCause.SIZE);
+    }
+
+    /**
+     * @return the number of entries that expired.
+     */
+    public long expiredCount() {
+        return removalCount(RemovalCause.EXPIRED);
+    }
+
+    /**
+     * @return the number of entries removed by the user.
+     */
+    public long explicitRemovalCount() {
+        return removalCount(RemovalCause.EXPLICIT);
+    }
+
+    /**
+     * @return the total size of the entries evicted because the cache was too full.
+     */
+    public long evictedWeight() {
+        return evictedWeight;
+    }
+
+    /**
+     * @return the number of entries in the cache when the snapshot was taken.
+     */
+    public long entryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return the average size of an entry in the cache, 0 if it was empty.
+     */
+    public double averageWeight() {
+        return entryCount == 0 ? 0.0 : (double) totalWeight / entryCount;
+    }
+
+    /**
+     * @return the number of eviction runs.
+     */
+    public long evictionRunCount() {
+        long count = 0;
+        for (long c : evictionLatency) {
+            count += c;
+        }
+        return count;
+    }
+
+    /**
+     * Returns an upper bound of the given percentile of the eviction run
+     * durations. The histogram has one bucket per power of two of
+     * microseconds, so the result is accurate within a factor of two.
+     *
+     * @param percentile between 0 and 100.
+     * @return the duration in microseconds, 0 if there were no eviction runs.
+     */
+    public long evictionLatencyPercentile(double percentile) {
+        long count = evictionRunCount();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < evictionLatency.length; i++) {
+            seen += evictionLatency[i];
+            if (seen >= rank && evictionLatency[i] > 0) {
+                return i == 0 ? 0 : (1L << i) - 1;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * @return the number of eviction runs per histogram bucket; bucket i holds
+     *      the runs that took less than 2^i microseconds.
+     */
+    public long[] evictionLatencyHistogram() {
+        return evictionLatency.clone();
+    }
+
+    /**
+     * Adds two snapshots up, e.g. the segments of a {@link ConcurrentDefaultCache}.
+     *
+     * @param other the other snapshot.
+     * @return the sum of both.
+     */
+    public CacheStats plus(CacheStats other) {
+        long[] removals = new long[removalCounts.length];
+        for (int i = 0; i < removals.length; i++) {
+            removals[i] = removalCounts[i] + other.removalCounts[i];
+        }
+        long[] latency = new long[evictionLatency.length];
+        for (int i = 0; i < latency.length; i++) {
+            latency[i] = evictionLatency[i] + other.evictionLatency[i];
+        }
+        return new CacheStats(hitCount + other.hitCount, missCount + other.missCount,
+                loadSuccessCount + other.loadSuccessCount, loadFailureCount + other.loadFailureCount,
+                totalLoadTime + other.totalLoadTime, removals, evictedWeight + other.evictedWeight,
+                entryCount + other.entryCount, totalWeight + other.totalWeight, latency);
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{hits=" + hitCount + ", misses=" + missCount + ", hitRate=" + hitRate()
+                + ", loads=" + loadSuccessCount + ", loadFailures=" + loadFailureCount
+                + ", averageLoadPenalty=" + averageLoadPenalty() + "ns"
+                + ", evictions=" + evictionCount() + ", expired=" + expiredCount()
+                + ", explicit=" + explicitRemovalCount() + ", averageWeight=" + averageWeight()
+                + ", evictionP99=" + evictionLatencyPercentile(99) + "us}";
+    }
+}
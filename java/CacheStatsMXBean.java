@@ -0,0 +1,39 @@
+/**
+ * JMX view of the statistics of a cache, see {@link DefaultCache#registerMBean()}.
+ */
+public interface CacheStatsMXBean {
+
+    String getName();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    double getHitRate();
+
+    long getLoadSuccessCount();
+
+    long getLoadFailureCount();
+
+    double getAverageLoadPenalty();
+
+    long getEvictionCount();
+
+    long getExpiredCount();
+
+    long getExplicitRemovalCount();
+
+    long getEntryCount();
+
+    double getAverageWeight();
+
+    long getCacheSize();
+
+    long getMaxCacheSize();
+
+    long getEvictionLatencyP50();
+
+    long getEvictionLatencyP99();
+
+    long getEvictionLatencyMax();
+}
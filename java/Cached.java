@@ -0,0 +1,36 @@
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+
+/**
+ * Marks an interface method whose results are cached by a
+ * {@link CachingProxy}. The first call with given arguments goes to the
+ * target, later calls with equal arguments are answered from the region.
+ * Null results are cached as well.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Cached {
+
+    /**
+     * @return the name of the region, by default the simple name of the
+     *      interface and the method name, e.g. <tt>RoleMapper.get</tt>.
+     */
+    String region() default "";
+
+    /**
+     * @return the lifetime of a cached result in milliseconds, -1 to only use
+     *      the maximum lifetime of the region.
+     */
+    long ttl() default -1;
+
+    /**
+     * @return the positions of the arguments that make up the key, by
+     *      default all of them.
+     */
+    int[] keyArgs() default {};
+}
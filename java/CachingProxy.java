@@ -0,0 +1,388 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Cache-aside layer for mapper, repository and DAO interfaces. A caching
+ * proxy implements the interface by calling the target, except that the
+ * results of {@link Cached} methods are kept in {@link DefaultCache} regions
+ * and {@link CacheEvict} methods remove entries from them after they ran.
+ * Instead of annotating the interface, which is often generated or owned by
+ * someone else, the same rules can be set up with the {@link Builder}:<pre>
+ *
+ *   RoleMapper mapper = CachingProxy.builder(RoleMapper.class, target)
+ *           .regions(regions)
+ *           .cache("get", "role", 60000)
+ *           .evict("set", "role")
+ *           .build();</pre>
+ *
+ * Working out the rules of an interface takes reflection, so when a proxy is
+ * needed for every call, e.g. around a mapper taken from a new session each
+ * time, build a {@link Factory} once and only bind the target per call:<pre>
+ *
+ *   static final CachingProxy.Factory&lt;RoleMapper&gt; MAPPERS =
+ *           CachingProxy.builder(RoleMapper.class).regions(regions)
+ *           .cache("get", "role", 60000).factory();
+ *
+ *   RoleMapper mapper = MAPPERS.bind(target);</pre>
+ *
+ * The key of a call is its single argument, or the list of its arguments
+ * compared element by element, including arrays. Concurrent calls with the
+ * same key share one call to the target. Exceptions of the target are passed
+ * on unchanged and nothing is cached for them.
+ */
+public final class CachingProxy {
+
+    /**
+     * Stands for a null result in a region.
+     */
+    private static final Object NULL = new Object();
+
+    private CachingProxy() {
+    }
+
+    /**
+     * Creates a caching proxy from the annotations of the interface.
+     *
+     * @param type the interface.
+     * @param target the object calls are passed on to.
+     * @param regions the regions to cache in.
+     * @param <T> <T>
+     * @return the proxy.
+     */
+    public static <T> T create(Class<T> type, T target, CacheRegions regions) {
+        return builder(type, target).regions(regions).build();
+    }
+
+    /**
+     * @param type the interface.
+     * @param target the object calls are passed on to.
+     * @param <T> <T>
+     * @return a builder for a caching proxy.
+     */
+    public static <T> Builder<T> builder(Class<T> type, T target) {
+        return new Builder<>(type, target);
+    }
+
+    /**
+     * @param type the interface.
+     * @param <T> <T>
+     * @return a builder for a {@link Factory}, which binds the target later.
+     */
+    public static <T> Builder<T> builder(Class<T> type) {
+        return new Builder<>(type, null);
+    }
+
+    /**
+     * Sets up a caching proxy. Rules given to the builder apply to every
+     * method with that name and take precedence over the annotations.
+     * @param <T> <T>
+     */
+    public static final class Builder<T> {
+
+        private final Class<T> type;
+        private final T target;
+        private CacheRegions regions;
+        private final Map<String, CacheRule> cacheRules = new HashMap<>();
+        private final Map<String, List<EvictRule>> evictRules = new HashMap<>();
+
+        private Builder(Class<T> type, T target) {
+            if (!type.isInterface()) {
+                throw new IllegalArgumentException("Not an interface: " + type.getName());
+            }
+            this.type = type;
+            this.target = target;
+        }
+
+        /**
+         * @param regions the regions to cache in. By default the proxy gets
+         *      regions of its own whose entries never expire.
+         * @return this
+         */
+        public Builder<T> regions(CacheRegions regions) {
+            this.regions = regions;
+            return this;
+        }
+
+        /**
+         * Caches the results of a method, like {@link Cached}.
+         *
+         * @param method the name of the method.
+         * @param region the name of the region.
+         * @param ttl the lifetime of a result in milliseconds, -1 to only use
+         *      the maximum lifetime of the region.
+         * @param keyArgs the positions of the arguments that make up the
+         *      key, none for all of them.
+         * @return this
+         */
+        public Builder<T> cache(String method, String region, long ttl, int... keyArgs) {
+            cacheRules.put(method, new CacheRule(region, ttl, keyArgs));
+            return this;
+        }
+
+        /**
+         * Removes the key of a call from a region after the method ran, like
+         * {@link CacheEvict}.
+         *
+         * @param method the name of the method.
+         * @param region the name of the region.
+         * @param keyArgs the positions of the arguments that make up the
+         *      key, none for all of them.
+         * @return this
+         */
+        public Builder<T> evict(String method, String region, int... keyArgs) {
+            evictRules.computeIfAbsent(method, m -> new ArrayList<>())
+                    .add(new EvictRule(new String[] {region}, keyArgs, false));
+            return this;
+        }
+
+        /**
+         * Clears a region after the method ran.
+         *
+         * @param method the name of the method.
+         * @param region the name of the region.
+         * @return this
+         */
+        public Builder<T> evictAll(String method, String region) {
+            evictRules.computeIfAbsent(method, m -> new ArrayList<>())
+                    .add(new EvictRule(new String[] {region}, new int[0], true));
+            return this;
+        }
+
+        /**
+         * @return the proxy.
+         */
+        public T build() {
+            if (target == null) {
+                throw new IllegalStateException("No target, use factory() and bind it");
+            }
+            return factory().bind(target);
+        }
+
+        /**
+         * Works out the rules once, for proxies that only differ in their target.
+         *
+         * @return a factory of proxies with the rules of this builder.
+         */
+        public Factory<T> factory() {
+            Map<Method, CacheRule> caching = new HashMap<>();
+            Map<Method, List<EvictRule>> evicting = new HashMap<>();
+            for (Method method : type.getMethods()) {
+                CacheRule cacheRule = cacheRules.get(method.getName());
+                Cached cached = method.getAnnotation(Cached.class);
+                if (cacheRule == null && cached != null) {
+                    String region = cached.region().isEmpty()
+                            ? type.getSimpleName() + "." + method.getName() : cached.region();
+                    cacheRule = new CacheRule(region, cached.ttl(), cached.keyArgs());
+                }
+                if (cacheRule != null) {
+                    caching.put(method, cacheRule);
+                }
+                List<EvictRule> rules = evictRules.get(method.getName());
+                CacheEvict evict = method.getAnnotation(CacheEvict.class);
+                if (rules == null && evict != null) {
+                    rules = new ArrayList<>();
+                    rules.add(new EvictRule(evict.regions(), evict.keyArgs(), evict.allEntries()));
+                }
+                if (rules != null) {
+                    evicting.put(method, rules);
+                }
+            }
+            CacheRegions r = regions != null ? regions : new CacheRegions(-1);
+            return new Factory<>(type, r, caching, evicting);
+        }
+    }
+
+    /**
+     * Creates caching proxies that share their rules and regions and only
+     * differ in the target calls are passed on to. Thread safe.
+     * @param <T> <T>
+     */
+    public static final class Factory<T> {
+
+        private final Class<T> type;
+        private final CacheRegions regions;
+        private final Map<Method, CacheRule> caching;
+        private final Map<Method, List<EvictRule>> evicting;
+
+        private Factory(Class<T> type, CacheRegions regions, Map<Method, CacheRule> caching,
+                Map<Method, List<EvictRule>> evicting) {
+            this.type = type;
+            this.regions = regions;
+            this.caching = caching;
+            this.evicting = evicting;
+        }
+
+        /**
+         * @param target the object calls are passed on to.
+         * @return a proxy around the target.
+         */
+        public T bind(T target) {
+            Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type},
+                    new Handler(target, regions, caching, evicting));
+            return type.cast(proxy);
+        }
+    }
+
+    private static final class CacheRule {
+
+        final String region;
+        final long ttl;
+        final int[] keyArgs;
+
+        CacheRule(String region, long ttl, int[] keyArgs) {
+            this.region = region;
+            this.ttl = ttl;
+            this.keyArgs = keyArgs;
+        }
+    }
+
+    private static final class EvictRule {
+
+        final String[] regions;
+        final int[] keyArgs;
+        final boolean allEntries;
+
+        EvictRule(String[] regions, int[] keyArgs, boolean allEntries) {
+            this.regions = regions;
+            this.keyArgs = keyArgs;
+            this.allEntries = allEntries;
+        }
+    }
+
+    private static final class Handler implements InvocationHandler {
+
+        private final Object target;
+        private final CacheRegions regions;
+        private final Map<Method, CacheRule> caching;
+        private final Map<Method, List<EvictRule>> evicting;
+
+        Handler(Object target, CacheRegions regions, Map<Method, CacheRule> caching,
+                Map<Method, List<EvictRule>> evicting) {
+            this.target = target;
+            this.regions = regions;
+            this.caching = caching;
+            this.evicting = evicting;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "CachingProxy(" + target + ")";
+                    default:
+                        break;
+                }
+            }
+            try {
+                CacheRule rule = caching.get(method);
+                if (rule != null) {
+                    Object value = regions.region(rule.region).get(key(args, rule.keyArgs), k -> {
+                        Object result = call(method, args);
+                        return result == null ? NULL : result;
+                    }, rule.ttl);
+                    return value == NULL ? null : value;
+                }
+                Object result = call(method, args);
+                List<EvictRule> rules = evicting.get(method);
+                if (rules != null) {
+                    for (EvictRule evict : rules) {
+                        for (String region : evict.regions) {
+                            if (evict.allEntries) {
+                                regions.clear(region);
+                            } else {
+                                regions.evict(region, key(args, evict.keyArgs));
+                            }
+                        }
+                    }
+                }
+                return result;
+            } catch (TargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private Object call(Method method, Object[] args) {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw new TargetException(e.getCause());
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Derives the key of a call from the selected arguments.
+     */
+    private static Object key(Object[] args, int[] keyArgs) {
+        Object[] selected;
+        if (args == null) {
+            selected = new Object[0];
+        } else if (keyArgs.length == 0) {
+            selected = args;
+        } else {
+            selected = new Object[keyArgs.length];
+            for (int i = 0; i < keyArgs.length; i++) {
+                selected[i] = args[keyArgs[i]];
+            }
+        }
+        if (selected.length == 1 && selected[0] != null && !selected[0].getClass().isArray()) {
+            return selected[0];
+        }
+        return new Key(selected.clone());
+    }
+
+    /**
+     * Key made of several arguments, compared element by element.
+     */
+    private static final class Key {
+
+        private final Object[] args;
+        private final int hash;
+
+        Key(Object[] args) {
+            this.args = args;
+            this.hash = Arrays.deepHashCode(args);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.deepEquals(args, ((Key) o).args);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.deepToString(args);
+        }
+    }
+
+    /**
+     * Carries an exception of the target through the region loader.
+     */
+    private static final class TargetException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        TargetException(Throwable cause) {
+            super(cause);
+        }
+    }
+}
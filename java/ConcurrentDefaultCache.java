@@ -0,0 +1,392 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+
+/**
+ * Lock-striped variant of {@link DefaultCache}. Keys are spread over a fixed
+ * number of segments, each of which is a complete DefaultCache guarded by its
+ * own monitor. Threads working on keys that live in different segments never
+ * contend with each other, so reads no longer serialize on a single lock.<p>
+ *
+ * The maximum size and maximum lifetime are applied per segment: every segment
+ * gets an equal share of the maximum cache size, and LRU eviction happens
+ * within a segment. Cache wide ordering is therefore approximate, which is the
+ * usual trade-off for striping. Like a lone DefaultCache of that size, a
+ * segment does not accept an entry larger than 90% of its share, so the
+ * resident size stays within the maximum size of the whole cache.<p>
+ *
+ * Hit and miss counters and the other statistics are kept by the segments
+ * and summed on request.
+ * @param <K> <K>
+ * @param <V> <V>
+ */
+public class ConcurrentDefaultCache<K, V> implements Map<K, V> {
+
+    /**
+     * Number of segments used when none is specified.
+     */
+    public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    /**
+     * The segments the keys are spread over. The length is always a power of two.
+     */
+    private final DefaultCache<K, V>[] segments;
+
+    /**
+     * Mask applied to the spread hash of a key to select its segment.
+     */
+    private final int segmentMask;
+
+    /**
+     * Maximum size in bytes of the whole cache.
+     */
+    private long maxCacheSize;
+
+    /**
+     * The name of the cache.
+     */
+    private String name;
+
+    /**
+     * Create a new striped cache with the default number of segments.
+     * @param maxLifetime the maximum amount of time objects can exist in
+     *      cache before being deleted. -1 means objects never expire.
+     */
+    public ConcurrentDefaultCache(long maxLifetime) {
+        this("", -1, maxLifetime, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * @param name a name for the cache.
+     * @param maxSize the maximum size of the cache in bytes. -1 means the cache
+     *      has no max size.
+     * @param maxLifetime the maximum amount of time objects can exist in
+     *      cache before being deleted. -1 means objects never expire.
+     * @param concurrencyLevel the number of segments, rounded up to a power of two.
+     */
+    public ConcurrentDefaultCache(String name, long maxSize, long maxLifetime, int concurrencyLevel) {
+        this(name, maxSize, maxLifetime, concurrencyLevel, null);
+    }
+
+    /**
+     * @param name a name for the cache.
+     * @param maxSize the maximum size of the cache, in the unit of the weigher.
+     *      -1 means the cache has no max size.
+     * @param maxLifetime the maximum amount of time objects can exist in
+     *      cache before being deleted. -1 means objects never expire.
+     * @param concurrencyLevel the number of segments, rounded up to a power of two.
+     * @param weigher computes the size of every entry, or null to estimate
+     *      the size of the values in bytes.
+     */
+    public ConcurrentDefaultCache(String name, long maxSize, long maxLifetime, int concurrencyLevel,
+            Weigher<? super K, ? super V> weigher) {
+        if (concurrencyLevel <= 0) {
+            throw new IllegalArgumentException("concurrencyLevel must be positive: " + concurrencyLevel);
+        }
+        int count = 1;
+        while (count < concurrencyLevel) {
+            count <<= 1;
+        }
+        this.name = name;
+        this.maxCacheSize = maxSize;
+        this.segmentMask = count - 1;
+        this.segments = newSegments(count);
+        for (int i = 0; i < count; i++) {
+            segments[i] = new DefaultCache<>(name + "#" + i, segmentSize(maxSize, count), maxLifetime, weigher);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> DefaultCache<K, V>[] newSegments(int count) {
+        return (DefaultCache<K, V>[]) new DefaultCache<?, ?>[count];
+    }
+
+    /**
+     * Share of the maximum cache size given to each segment.
+     */
+    private static long segmentSize(long maxSize, int count) {
+        return maxSize < 0 ? maxSize : Math.max(1, maxSize / count);
+    }
+
+    /**
+     * Returns the segment that owns the given key. The hash is spread so that
+     * keys whose hash codes only differ in the upper bits still end up in
+     * different segments.
+     */
+    private DefaultCache<K, V> segmentFor(Object key) {
+        if (key == null) {
+            return segments[0];
+        }
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & segmentMask];
+    }
+
+    /**
+     * @see Map#put(Object, Object)
+     * @param key key
+     * @param value value
+     * @return V
+     */
+    public V put(K key, V value) {
+        return segmentFor(key).put(key, value);
+    }
+
+    /**
+     * @see Map#get(Object)
+     * @param key key
+     * @return V
+     */
+    public V get(Object key) {
+        return segmentFor(key).get(key);
+    }
+
+    /**
+     * Returns the value of a key, loading it on a miss. Concurrent misses on
+     * the same key share a single load.
+     *
+     * @param key key
+     * @param loader loads the value of a missing key.
+     * @return the cached or loaded value.
+     * @see DefaultCache#get(Object, Function)
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        return segmentFor(key).get(key, loader);
+    }
+
+    /**
+     * @see Map#remove(Object)
+     * @param key key
+     * @return V
+     */
+    public V remove(Object key) {
+        return segmentFor(key).remove(key);
+    }
+
+    /**
+     * @see Map#clear()
+     */
+    public void clear() {
+        for (DefaultCache<K, V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * @see Map#size()
+     * @return int
+     */
+    public int size() {
+        int size = 0;
+        for (DefaultCache<K, V> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * @see Map#isEmpty()
+     * @return boolean
+     */
+    public boolean isEmpty() {
+        for (DefaultCache<K, V> segment : segments) {
+            if (!segment.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @see Map#containsKey(Object)
+     * @param key key
+     * @return boolean
+     */
+    public boolean containsKey(Object key) {
+        return segmentFor(key).containsKey(key);
+    }
+
+    /**
+     * @see Map#containsValue(Object)
+     * @param value value
+     * @return boolean
+     */
+    public boolean containsValue(Object value) {
+        for (DefaultCache<K, V> segment : segments) {
+            if (segment.containsValue(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @see Map#putAll(Map)
+     * @param map map
+     */
+    public void putAll(Map<? extends K, ? extends V> map) {
+        for (Entry<? extends K, ? extends V> entry : map.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @see Map#values()
+     * @return Collection<V>
+     */
+    public Collection<V> values() {
+        Collection<V> values = new ArrayList<>();
+        for (DefaultCache<K, V> segment : segments) {
+            // Iterate instead of addAll, which goes through toArray().
+            for (V value : segment.values()) {
+                values.add(value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @see Map#entrySet()
+     * @return Set
+     */
+    public Set<Entry<K, V>> entrySet() {
+        Map<K, V> result = new HashMap<>();
+        for (DefaultCache<K, V> segment : segments) {
+            for (Entry<K, V> entry : segment.entrySet()) {
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return result.entrySet();
+    }
+
+    /**
+     * @return Set<K>
+     */
+    public Set<K> keySet() {
+        Set<K> keys = new HashSet<>();
+        for (DefaultCache<K, V> segment : segments) {
+            keys.addAll(segment.keySet());
+        }
+        return keys;
+    }
+
+    /**
+     * Returns the name of this cache.
+     *
+     * @return the name of this cache.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the number of segments the keys are spread over.
+     *
+     * @return the number of segments.
+     */
+    public int getConcurrencyLevel() {
+        return segments.length;
+    }
+
+    /**
+     * Returns the number of cache hits summed over all segments.
+     *
+     * @return the number of cache hits.
+     */
+    public long getCacheHits() {
+        long hits = 0;
+        for (DefaultCache<K, V> segment : segments) {
+            hits += segment.getCacheHits();
+        }
+        return hits;
+    }
+
+    /**
+     * Returns the number of cache misses summed over all segments.
+     *
+     * @return the number of cache misses.
+     */
+    public long getCacheMisses() {
+        long misses = 0;
+        for (DefaultCache<K, V> segment : segments) {
+            misses += segment.getCacheMisses();
+        }
+        return misses;
+    }
+
+    /**
+     * Returns a snapshot of the statistics of the cache, summed over all segments.
+     *
+     * @return the statistics of the cache.
+     */
+    public CacheStats stats() {
+        CacheStats stats = segments[0].stats();
+        for (int i = 1; i < segments.length; i++) {
+            stats = stats.plus(segments[i].stats());
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the size of the cache contents in bytes, summed over all segments.
+     *
+     * @return the size of the cache contents in bytes.
+     */
+    public long getCacheSize() {
+        long size = 0;
+        for (DefaultCache<K, V> segment : segments) {
+            size += segment.getCacheSize();
+        }
+        return size;
+    }
+
+    /**
+     * Returns the maximum size of the cache (in bytes).
+     *
+     * @return the maximum size of the cache (-1 indicates unlimited max size).
+     */
+    public long getMaxCacheSize() {
+        return maxCacheSize;
+    }
+
+    /**
+     * Sets the maximum size of the cache. The size is divided evenly over
+     * the segments.
+     *
+     * @param maxCacheSize the maximum size of this cache (-1 indicates unlimited max size).
+     */
+    public void setMaxCacheSize(int maxCacheSize) {
+        this.maxCacheSize = maxCacheSize;
+        int segmentSize = (int) segmentSize(maxCacheSize, segments.length);
+        for (DefaultCache<K, V> segment : segments) {
+            segment.setMaxCacheSize(segmentSize);
+        }
+    }
+
+    /**
+     * Returns the maximum number of milleseconds that any object can live
+     * in cache.
+     *
+     * @return the maximum number of milleseconds before objects are expired.
+     */
+    public long getMaxLifetime() {
+        return segments[0].getMaxLifetime();
+    }
+
+    /**
+     * Sets the maximum number of milleseconds that any object can live
+     * in cache.
+     *
+     * @param maxLifetime the maximum number of milleseconds before objects are expired.
+     */
+    public void setMaxLifetime(long maxLifetime) {
+        for (DefaultCache<K, V> segment : segments) {
+            segment.setMaxLifetime(maxLifetime);
+        }
+    }
+}
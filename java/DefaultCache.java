@@ -1,12 +1,33 @@
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanRegistration;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 
 /**
@@ -30,7 +51,16 @@ import java.util.Set;
  * to the CacheObject that wraps the real object we are looking for.
  * The object is subsequently moved to the front of the accessed linked list
  * and any necessary cache cleanups are performed. Cache deletion and expiration
- * is performed as needed.
+ * is performed as needed.<p>
+ *
+ * Optionally the cache can run in read buffer mode (see
+ * {@link #enableReadBuffer(int)}). Hits are then served without taking the
+ * cache lock: they are recorded in a {@link ReadBuffer} and replayed onto the
+ * accessed list in batches, so the eviction order is approximately LRU.<p>
+ *
+ * Hits, misses, loads and removals are counted without locking, see
+ * {@link #stats()} and {@link #registerMBean()}; a cache that is thrown away
+ * again must call {@link #unregisterMBean()}.
  * @param <K> <K>
  * @param <V> <V>
  * @author Matt Tucker
@@ -40,7 +70,7 @@ public class DefaultCache<K, V> implements Map<K, V> {
     /**
      * The map the keys and values are stored in.
      */
-    protected Map<K, CacheObject<V>> map;
+    protected volatile Map<K, CacheObject<V>> map;
 
     /**
      * Linked list to maintain order that cache objects are accessed
@@ -70,24 +100,144 @@ public class DefaultCache<K, V> implements Map<K, V> {
     protected long maxLifetime;
 
     /**
-     * Maintain the number of cache hits and misses. A cache hit occurs every
-     * time the get method is called and the cache contains the requested
-     * object. A cache miss represents the opposite occurence.<p>
+     * Computes the size of every entry. Null means values are measured by
+     * {@link CacheSizes}.
+     */
+    private final Weigher<? super K, ? super V> weigher;
+
+    /**
+     * Maintain the number of cache hits and misses, loads and removals. A
+     * cache hit occurs every time the get method is called and the cache
+     * contains the requested object. A cache miss represents the opposite
+     * occurence.<p>
      *
      * Keeping track of cache hits and misses lets one measure how efficient
      * the cache is; the higher the percentage of hits, the more efficient.
+     * The counters are striped, so hits served without the cache lock do not
+     * contend on them.
      */
-    protected long cacheHits = 0L;
+    protected final StatsCounter stats = new StatsCounter();
+
     /**
-     * 记录缓存不中次数
+     * Buffer of recent hits waiting to be replayed onto the accessed list.
+     * Null unless read buffer mode is enabled.
      */
-    protected long cacheMisses = 0L;
+    private volatile ReadBuffer<CacheObject<V>> readBuffer;
+
+    /**
+     * Set while a drain of the read buffer is scheduled on the maintenance
+     * thread, so readers schedule at most one at a time.
+     */
+    private final AtomicBoolean draining = new AtomicBoolean();
 
     /**
      * The name of the cache.
      */
     private String name;
 
+    /**
+     * Size of each read buffer stripe, kept so the buffer can be recreated on clear.
+     */
+    private int readBufferSize;
+
+    /**
+     * Time in milliseconds between two background expiry sweeps. -1 means
+     * expired entries are cleaned up by the lookups themselves.
+     */
+    private long sweepInterval = -1;
+
+    /**
+     * Maximum number of expired entries a single background sweep removes.
+     */
+    private int maxEntriesPerSweep;
+
+    /**
+     * The scheduled background sweep, if any.
+     */
+    private ScheduledFuture<?> sweepTask;
+
+    /**
+     * Maximum number of entries a single write evicts. -1 means a write that
+     * finds the cache too full evicts all the way down to 90%.
+     */
+    private int maxEvictionsPerWrite = -1;
+
+    /**
+     * The scheduled background eviction, if any.
+     */
+    private ScheduledFuture<?> evictionTask;
+
+    /**
+     * Set while a follow-up batch of the background eviction is queued.
+     */
+    private final AtomicBoolean evictionQueued = new AtomicBoolean();
+
+    /**
+     * The scheduled background checkpoint, if any.
+     */
+    private ScheduledFuture<?> checkpointTask;
+
+    /**
+     * The statistics MXBean last registered by this cache, null if none.
+     */
+    private volatile StatsMXBean mbean;
+
+    /**
+     * Timers of the entries that were added with a lifetime of their own.
+     * Created on first use.
+     */
+    private TimerWheel<K> timerWheel;
+
+    /**
+     * Decides which entries are evicted when the cache is too full. Null means
+     * plain LRU on the accessed list.
+     */
+    private EvictionPolicy<K> evictionPolicy;
+
+    /**
+     * Loads in progress, so that concurrent misses on a key share one load.
+     */
+    private final ConcurrentHashMap<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+
+    /**
+     * Keys being refreshed in the background. Kept apart from
+     * {@link #loading}, so a caller that misses a key while it is refreshed
+     * runs its own loader instead of waiting for the refresh.
+     */
+    private final Set<K> refreshing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Time in milliseconds after which a hit triggers an asynchronous reload
+     * of the entry. -1 means entries are never refreshed.
+     */
+    private volatile long refreshAfterWrite = -1;
+
+    /**
+     * Reloads entries that are due for a refresh.
+     */
+    private volatile Function<? super K, ? extends V> refreshLoader;
+
+    /**
+     * Runs the refreshes.
+     */
+    private volatile Executor refreshExecutor;
+
+    /**
+     * Minimum time in milliseconds between two messages about failed
+     * refreshes, so a failing loader does not flood the output.
+     */
+    private static final long REFRESH_FAILURE_LOG_INTERVAL = 60 * 1000;
+
+    /**
+     * When the last message about a failed refresh was printed.
+     */
+    private final AtomicLong lastRefreshFailureLog = new AtomicLong();
+
+    /**
+     * Failed refreshes since the last message about one.
+     */
+    private final AtomicLong refreshFailures = new AtomicLong();
+
     /**
      * Create a new default cache and specify the maximum size of for the cache in
      * bytes, and the maximum lifetime of objects.
@@ -107,7 +257,21 @@ public class DefaultCache<K, V> implements Map<K, V> {
  
      */
     public DefaultCache(String name, long maxSize, long maxLifetime) {
+        this(name, maxSize, maxLifetime, null);
+    }
+
+    /**
+     * @param name a name for the cache.
+     * @param maxSize the maximum size of the cache, in the unit of the weigher.
+     *      -1 means the cache has no max size.
+     * @param maxLifetime the maximum amount of time objects can exist in
+     *      cache before being deleted. -1 means objects never expire.
+     * @param weigher computes the size of every entry, or null to estimate
+     *      the size of the values in bytes with {@link CacheSizes}.
+     */
+    public DefaultCache(String name, long maxSize, long maxLifetime, Weigher<? super K, ? super V> weigher) {
         this.name = name;
+        this.weigher = weigher;
         this.maxCacheSize = maxSize;
         this.maxLifetime = maxLifetime;
 
@@ -126,15 +290,28 @@ public class DefaultCache<K, V> implements Map<K, V> {
      * @return  V
      */
     public synchronized V put(K key, V value) {
+        return put(key, value, -1);
+    }
+
+    /**
+     * Adds an object to the cache with a lifetime of its own. The entry
+     * expires after <tt>ttl</tt> milliseconds or after the maximum lifetime of
+     * the cache, whichever comes first; to give every entry its own lifetime,
+     * create the cache with a maximum lifetime of -1. Per-entry lifetimes are
+     * tracked by a {@link TimerWheel}, so mixing many different lifetimes costs
+     * the same as using a single one.
+     *
+     * @param key key
+     * @param value value
+     * @param ttl the lifetime of this entry in milliseconds, -1 to only use
+     *      the maximum lifetime of the cache.
+     * @return the previous value of the key, or null.
+     */
+    public synchronized V put(K key, V value, long ttl) {
         // Delete an old entry if it exists.
-        V answer = remove(key);
+        V answer = removeEntry(key, RemovalCause.REPLACED);
 
-        int objectSize = 1;
-        try {
-             objectSize = CacheSizes.sizeOfAnything(value);
-        } catch (Exception e) {
-             System.out.println(e.getMessage());
-        }
+        int objectSize = sizeOf(key, value);
 
         // If the object is bigger than the entire cache, simply don't add it.
         if (maxCacheSize > 0 && objectSize > maxCacheSize * .90) {
@@ -144,17 +321,28 @@ public class DefaultCache<K, V> implements Map<K, V> {
         }
         cacheSize += objectSize;
         CacheObject<V> cacheObject = new CacheObject<>(value, objectSize);
-        map.put(key, cacheObject);
         // Make an entry into the cache order list.
         // Store the cache order list entry so that we can get back to it
         // during later lookups.
         cacheObject.lastAccessedListNode = lastAccessedList.addFirst(key);
+        if (evictionPolicy != null) {
+            cacheObject.policyHandle = evictionPolicy.recordInsert(key);
+        }
         // Add the object to the age list
         LinkedListNode<K> ageNode = ageList.addFirst(key);
         // We make an explicit call to currentTimeMillis() so that total accuracy
         // of lifetime calculations is better than one second.
         ageNode.timestamp = System.currentTimeMillis();
         cacheObject.ageListNode = ageNode;
+        if (ttl > 0) {
+            if (timerWheel == null) {
+                timerWheel = new TimerWheel<>(ageNode.timestamp);
+            }
+            cacheObject.timerNode = timerWheel.schedule(key, ageNode.timestamp + ttl);
+        }
+        // Only publish the object once its nodes are set, buffered readers
+        // look at them without holding the lock.
+        map.put(key, cacheObject);
 
         // If cache is too full, remove least used cache entries until it is
         // not too full.
@@ -163,33 +351,380 @@ public class DefaultCache<K, V> implements Map<K, V> {
         return answer;
     }
 
+    /**
+     * Returns the value of a key without counting a hit or miss and without
+     * changing its position in the accessed list.
+     *
+     * @param key key
+     * @return the value, or null if the key is not in the cache.
+     */
+    protected synchronized V peek(Object key) {
+        CacheObject<V> cacheObject = map.get(key);
+        return cacheObject == null || isExpired(cacheObject) ? null : cacheObject.object;
+    }
+
+    /**
+     * Returns the value of a key, loading and caching it on a miss. Loads are
+     * deduplicated per key: if several threads miss the same key at the same
+     * time, only one of them runs the loader and the others wait for its
+     * result. A loader returning null is not cached. The loader runs without
+     * holding the cache lock.
+     *
+     * @param key key
+     * @param loader loads the value of a missing key, e.g. from the database.
+     * @return the cached or loaded value, or null if the loader returned null.
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        return get(key, loader, -1);
+    }
+
+    /**
+     * Returns the value of a key, loading it on a miss like
+     * {@link #get(Object, Function)}, and caching the loaded value with a
+     * lifetime of its own.
+     *
+     * @param key key
+     * @param loader loads the value of a missing key, e.g. from the database.
+     * @param ttl the lifetime of a loaded value in milliseconds, -1 to only
+     *      use the maximum lifetime of the cache.
+     * @return the cached or loaded value, or null if the loader returned null.
+     * @see #put(Object, Object, long)
+     */
+    public V get(K key, Function<? super K, ? extends V> loader, long ttl) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = loading.putIfAbsent(key, future);
+        if (inFlight != null) {
+            return join(inFlight);
+        }
+        try {
+            // The previous load may have finished between our miss and our claim.
+            value = peek(key);
+            if (value == null) {
+                long start = System.nanoTime();
+                try {
+                    value = loader.apply(key);
+                } catch (RuntimeException | Error e) {
+                    stats.recordLoadFailure(System.nanoTime() - start);
+                    throw e;
+                }
+                stats.recordLoadSuccess(System.nanoTime() - start);
+                if (value != null) {
+                    put(key, value, ttl);
+                }
+            }
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    /**
+     * Returns the values of several keys, loading all missing ones with a
+     * single call to the bulk loader. Keys that another thread is already
+     * loading, through this method or {@link #get(Object, Function)}, are not
+     * passed to the bulk loader; their result is awaited instead.
+     *
+     * @param keys the keys to look up.
+     * @param bulkLoader loads the values of the missing keys it is given. Keys
+     *      it leaves out of the returned map are treated as not found.
+     * @return the values found or loaded. Keys without a value are absent.
+     */
+    public Map<K, V> getAll(Collection<? extends K> keys,
+            Function<? super Set<K>, ? extends Map<? extends K, ? extends V>> bulkLoader) {
+        Map<K, V> result = new LinkedHashMap<>();
+        Map<K, CompletableFuture<V>> claimed = new LinkedHashMap<>();
+        Map<K, CompletableFuture<V>> inFlight = new LinkedHashMap<>();
+        for (K key : keys) {
+            V value = get(key);
+            if (value != null) {
+                result.put(key, value);
+                continue;
+            }
+            CompletableFuture<V> future = new CompletableFuture<>();
+            CompletableFuture<V> existing = loading.putIfAbsent(key, future);
+            if (existing == null) {
+                claimed.put(key, future);
+            } else {
+                inFlight.put(key, existing);
+            }
+        }
+
+        if (!claimed.isEmpty()) {
+            long start = System.nanoTime();
+            try {
+                Map<? extends K, ? extends V> loaded = bulkLoader.apply(Collections.unmodifiableSet(claimed.keySet()));
+                stats.recordLoadSuccess(System.nanoTime() - start);
+                for (Map.Entry<K, CompletableFuture<V>> entry : claimed.entrySet()) {
+                    V value = loaded == null ? null : loaded.get(entry.getKey());
+                    if (value != null) {
+                        put(entry.getKey(), value);
+                        result.put(entry.getKey(), value);
+                    }
+                    entry.getValue().complete(value);
+                }
+            } catch (RuntimeException | Error e) {
+                stats.recordLoadFailure(System.nanoTime() - start);
+                for (CompletableFuture<V> future : claimed.values()) {
+                    future.completeExceptionally(e);
+                }
+                throw e;
+            } finally {
+                for (Map.Entry<K, CompletableFuture<V>> entry : claimed.entrySet()) {
+                    loading.remove(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        // Only wait for other threads once our own loads are published, so
+        // two bulk loads over overlapping keys cannot wait for each other.
+        for (Map.Entry<K, CompletableFuture<V>> entry : inFlight.entrySet()) {
+            V value = join(entry.getValue());
+            if (value != null) {
+                result.put(entry.getKey(), value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Enables refresh-ahead. A hit on an entry that was written more than
+     * <tt>refreshAfterWrite</tt> milliseconds ago still returns the current
+     * value, but also starts a reload on the executor. When the reload
+     * finishes, the new value replaces the old one in a single step, unless
+     * the entry was removed or replaced in the meantime. Keep the window well
+     * below the maximum lifetime, so hot entries are refreshed before they
+     * expire and no reader has to wait for a load.<p>
+     *
+     * Use a bounded executor such as
+     * {@link CacheMaintenance#newRefreshExecutor(int, int)}; refreshes the
+     * executor rejects are simply skipped and retried by a later hit.
+     *
+     * @param refreshAfterWrite the time in milliseconds after which entries are
+     *      refreshed, or -1 to disable refreshing.
+     * @param loader loads the new value of a key.
+     * @param executor runs the reloads.
+     */
+    public void setRefreshAfterWrite(long refreshAfterWrite, Function<? super K, ? extends V> loader,
+            Executor executor) {
+        this.refreshLoader = loader;
+        this.refreshExecutor = executor;
+        this.refreshAfterWrite = refreshAfterWrite;
+    }
+
+    /**
+     * Returns the time after which a hit triggers a refresh of the entry.
+     *
+     * @return the refresh window in milliseconds, -1 if refreshing is disabled.
+     */
+    public long getRefreshAfterWrite() {
+        return refreshAfterWrite;
+    }
+
+    /**
+     * Starts an asynchronous reload of an entry that was hit, if it is older
+     * than the refresh window and not already being refreshed.
+     */
+    @SuppressWarnings("unchecked")
+    private void refreshIfStale(Object key, CacheObject<V> cacheObject) {
+        long window = refreshAfterWrite;
+        LinkedListNode<?> ageNode = cacheObject.ageListNode;
+        if (window <= 0 || ageNode == null || System.currentTimeMillis() - ageNode.timestamp <= window) {
+            return;
+        }
+        final K k = (K) key;
+        if (!refreshing.add(k)) {
+            return;
+        }
+        final Function<? super K, ? extends V> loader = refreshLoader;
+        try {
+            refreshExecutor.execute(() -> {
+                long start = System.nanoTime();
+                try {
+                    V value = loader.apply(k);
+                    stats.recordLoadSuccess(System.nanoTime() - start);
+                    if (value != null) {
+                        replace(k, cacheObject, value);
+                    }
+                } catch (RuntimeException | Error e) {
+                    stats.recordLoadFailure(System.nanoTime() - start);
+                    logRefreshFailure(k, e);
+                } finally {
+                    refreshing.remove(k);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshing.remove(k);
+        }
+    }
+
+    /**
+     * Prints a failed refresh, at most once per
+     * {@link #REFRESH_FAILURE_LOG_INTERVAL} with the number of failures
+     * that were not printed in between.
+     */
+    private void logRefreshFailure(K key, Throwable e) {
+        long failures = refreshFailures.incrementAndGet();
+        long now = System.currentTimeMillis();
+        long last = lastRefreshFailureLog.get();
+        if (now - last < REFRESH_FAILURE_LOG_INTERVAL || !lastRefreshFailureLog.compareAndSet(last, now)) {
+            return;
+        }
+        refreshFailures.addAndGet(-failures);
+        System.out.println("Cache: " + name + " -- refresh of key " + key + " failed: " + e.getMessage() +
+                (failures > 1 ? " (" + (failures - 1) + " more refreshes failed since the last message)" : ""));
+    }
+
+    /**
+     * Swaps a refreshed value into an entry if it is still the given cache
+     * object. The entry keeps its place in the accessed list and the eviction
+     * policy and is not counted as a removal and insert; only its size and
+     * its age are updated, and its own lifetime, if it had one, restarts.
+     */
+    @SuppressWarnings("unchecked")
+    private synchronized void replace(K key, CacheObject<V> expected, V value) {
+        if (map.get(key) != expected || expected.ageListNode == null) {
+            return;
+        }
+        int objectSize = sizeOf(key, value);
+        if (maxCacheSize > 0 && objectSize > maxCacheSize * .90) {
+            // Same as put: a value that is too large replaces the entry by nothing.
+            System.out.println("Cache: " + name + " -- object with key " + key +
+                    " is too large to fit in cache. Size is " + objectSize);
+            removeEntry(key, RemovalCause.REPLACED);
+            return;
+        }
+        cacheSize += objectSize - expected.size;
+        expected.size = objectSize;
+        expected.object = value;
+
+        LinkedListNode<K> ageNode = (LinkedListNode<K>) expected.ageListNode;
+        long now = System.currentTimeMillis();
+        LinkedListNode<?> timerNode = expected.timerNode;
+        if (timerNode != null) {
+            // Publish the new timer before cancelling the old one, lookups
+            // read it without the lock.
+            long ttl = timerNode.timestamp - ageNode.timestamp;
+            expected.timerNode = timerWheel.schedule(key, now + ttl);
+            timerWheel.cancel(timerNode);
+        }
+        ageNode.remove();
+        ageNode.timestamp = now;
+        ageList.addFirst(ageNode);
+
+        cullCache();
+    }
+
+    /**
+     * Waits for a load started by another thread and rethrows its failure.
+     */
+    private static <V> V join(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the size an entry is accounted for in the cache size. Uses the
+     * weigher if the cache has one, otherwise the value is measured by
+     * {@link CacheSizes}, which is only meant as a fallback. Subclasses that
+     * know better, for example because the value lives outside the heap, can
+     * override this.
+     *
+     * @param key the key being added.
+     * @param value the value being added.
+     * @return the size of the entry.
+     */
+    protected int sizeOf(K key, V value) {
+        if (weigher != null) {
+            return weigher.weigh(key, value);
+        }
+        int objectSize = 1;
+        try {
+             objectSize = CacheSizes.sizeOfAnything(value);
+        } catch (Exception e) {
+             System.out.println(e.getMessage());
+        }
+        return objectSize;
+    }
+
     /**
      *  @see Map#get(Object)
      * @param key key
      * @return V
      */
+    public V get(Object key) {
+        ReadBuffer<CacheObject<V>> buffer = readBuffer;
+        if (buffer != null && key != null) {
+            CacheObject<V> cacheObject = map.get(key);
+            if (cacheObject != null && !isExpired(cacheObject)) {
+                // Record the hit instead of reordering the list under the lock.
+                stats.recordHit();
+                if (buffer.offer(cacheObject)) {
+                    scheduleDrain();
+                }
+                refreshIfStale(key, cacheObject);
+                return cacheObject.object;
+            }
+        }
+        return getLocked(key);
+    }
+
+    /**
+     * Lookup performed while holding the cache lock. Misses and expired
+     * entries in read buffer mode end up here as well.
+     * @param key key
+     * @return V
+     */
     @SuppressWarnings("unchecked")
-    public synchronized V get(Object key) {
+    private synchronized V getLocked(Object key) {
         // First, clear all entries that have been in cache longer than the
         // maximum defined age.
         deleteExpiredEntries();
 
         CacheObject<V> cacheObject = map.get(key);
+        if (cacheObject != null && (sweepInterval > 0 || cacheObject.timerNode != null)
+                && isExpired(cacheObject)) {
+            // The background sweeper or the timer wheel has not reached
+            // this entry yet.
+            removeEntry(key, RemovalCause.EXPIRED);
+            cacheObject = null;
+        }
         if (cacheObject == null) {
             // The object didn't exist in cache, so increment cache misses.
-            cacheMisses++;
+            stats.recordMiss();
             return null;
         }
 
         // The object exists in cache, so increment cache hits. Also, increment
         // the object's read count.
-        cacheHits++;
+        stats.recordHit();
         //cacheObject.readCount++;
 
         // Remove the object from it's current place in the cache order list,
         // and re-insert it at the front of the list.
         cacheObject.lastAccessedListNode.remove();
         lastAccessedList.addFirst((LinkedListNode<K>) cacheObject.lastAccessedListNode);
+        if (evictionPolicy != null) {
+            evictionPolicy.recordAccess(cacheObject.policyHandle);
+        }
+        refreshIfStale(key, cacheObject);
 
         return cacheObject.object;
     }
@@ -199,8 +734,22 @@ public class DefaultCache<K, V> implements Map<K, V> {
      * @param key key
      * @return V
      */
-    @SuppressWarnings("unchecked")
     public synchronized V remove(Object key) {
+        return removeEntry(key, RemovalCause.EXPLICIT);
+    }
+
+    /**
+     * Removes an entry and records why it left the cache. Every removal,
+     * whether explicit, by replacement, eviction or expiry, goes through
+     * here, so subclasses that need to release something per entry only have
+     * to override this method.
+     *
+     * @param key key
+     * @param cause why the entry is removed.
+     * @return the removed value, or null if the key was not in the cache.
+     */
+    @SuppressWarnings("unchecked")
+    protected synchronized V removeEntry(Object key, RemovalCause cause) {
         if (map == null || key == null) {
             return null;
         }
@@ -218,32 +767,47 @@ public class DefaultCache<K, V> implements Map<K, V> {
         // remove from the cache order list
         cacheObject.lastAccessedListNode.remove();
         cacheObject.ageListNode.remove();
+        if (cacheObject.policyHandle != null) {
+            evictionPolicy.recordRemoval(cacheObject.policyHandle);
+            cacheObject.policyHandle = null;
+        }
+        if (cacheObject.timerNode != null) {
+            timerWheel.cancel(cacheObject.timerNode);
+            cacheObject.timerNode = null;
+        }
         // remove references to linked list nodes
         cacheObject.ageListNode = null;
         cacheObject.lastAccessedListNode = null;
         // removed the object, so subtract its size from the total.
         cacheSize -= cacheObject.size;
+        stats.recordRemoval(cause, cacheObject.size);
         return cacheObject.object;
     }
-    /** 
+    /**
+     * Removes every entry in constant time. Instead of removing the entries
+     * one by one, the map and the lists are replaced by empty ones and the
+     * old ones are left to the garbage collector. Entries dropped this way
+     * do not go through {@link #removeEntry(Object, RemovalCause)}.
+     *
      *  @see Map#clear()
      */
     public synchronized void clear() {
-        Object[] keys = map.keySet().toArray();
-        for (int i = 0; i < keys.length; i++) {
-            remove(keys[i]);
-        }
-
-        // Now, reset all containers.
-        map.clear();
-        lastAccessedList.clear();
+        // Swap in empty containers. Lookups that do not hold the lock may
+        // still see the old map for a moment, which is no different from a
+        // lookup that happened just before the clear.
+        map = readBuffer != null ? new ConcurrentHashMap<>() : new HashMap<>(103);
         lastAccessedList = new LinkedList<>();
-        ageList.clear();
+        if (evictionPolicy != null) {
+            evictionPolicy.clear();
+        }
         ageList = new LinkedList<>();
+        timerWheel = null;
 
         cacheSize = 0;
-        cacheHits = 0;
-        cacheMisses = 0;
+        stats.reset();
+        if (readBuffer != null) {
+            readBuffer = new ReadBuffer<>(readBufferSize);
+        }
     }
 
     /**
@@ -473,7 +1037,8 @@ public class DefaultCache<K, V> implements Map<K, V> {
         // maximum defined age.
         deleteExpiredEntries();
 
-        return map.containsKey(key);
+        CacheObject<V> cacheObject = map.get(key);
+        return cacheObject != null && !isExpired(cacheObject);
     }
 
 
@@ -587,7 +1152,7 @@ public class DefaultCache<K, V> implements Map<K, V> {
      * @return the number of cache hits.
      */
     public long getCacheHits() {
-        return cacheHits;
+        return stats.hitCount();
     }
 
     /**
@@ -601,7 +1166,64 @@ public class DefaultCache<K, V> implements Map<K, V> {
      * @return the number of cache hits.
      */
     public long getCacheMisses() {
-        return cacheMisses;
+        return stats.missCount();
+    }
+
+    /**
+     * Returns a snapshot of the statistics of the cache. Taking a snapshot
+     * does not lock the cache, so it can be polled as often as needed.
+     *
+     * @return the statistics of the cache.
+     */
+    public CacheStats stats() {
+        return stats.snapshot(map.size(), cacheSize);
+    }
+
+    /**
+     * Publishes the statistics of the cache as an MXBean named
+     * <tt>DefaultCache:type=CacheStats,name=</tt> followed by the quoted
+     * name of the cache. Two caches with the same name cannot both publish
+     * their statistics.
+     *
+     * @return the name the bean was registered under.
+     * @throws javax.management.InstanceAlreadyExistsException if a bean is
+     *      already registered under that name.
+     * @throws JMException if the bean could not be registered.
+     */
+    public ObjectName registerMBean() throws JMException {
+        ObjectName objectName = new ObjectName("DefaultCache:type=CacheStats,name=" + ObjectName.quote(name));
+        StatsMXBean bean = new StatsMXBean(this);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(bean, objectName);
+        mbean = bean;
+        return objectName;
+    }
+
+    /**
+     * Removes the MXBean published by {@link #registerMBean()}. The bean
+     * holds on to the cache, so a cache that is thrown away must call this,
+     * or it is never garbage collected. A bean that has already been removed
+     * by someone else is left alone, and so is another cache's bean that was
+     * registered under the same name since.
+     *
+     * @return true if this cache's bean was registered and has been removed.
+     * @throws JMException if the bean could not be unregistered.
+     */
+    public boolean unregisterMBean() throws JMException {
+        StatsMXBean bean = mbean;
+        if (bean == null) {
+            return false;
+        }
+        mbean = null;
+        ObjectName objectName = bean.registeredName;
+        if (objectName == null) {
+            return false;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (InstanceNotFoundException e) {
+            return false;
+        }
+        return true;
     }
 
     /**
@@ -665,14 +1287,471 @@ public class DefaultCache<K, V> implements Map<K, V> {
         this.maxLifetime = maxLifetime;
     }
 
+    /**
+     * Switches the cache to read buffer mode. Hits no longer take the cache
+     * lock; instead they are recorded in per-thread ring buffers of the given
+     * size and replayed onto the accessed list in batches, either on the
+     * {@link CacheMaintenance} thread once a buffer fills up or before the
+     * next eviction. Readers never wait for the cache lock. The larger the buffer,
+     * the fewer lock acquisitions, but the further the eviction order may
+     * drift from strict LRU. Null keys are not supported in this mode.
+     *
+     * @param bufferSize the number of hits each thread may buffer before they
+     *      are dropped.
+     */
+    public synchronized void enableReadBuffer(int bufferSize) {
+        if (readBuffer != null) {
+            return;
+        }
+        // Buffered readers look up entries without the lock.
+        map = new ConcurrentHashMap<>(map);
+        readBufferSize = bufferSize;
+        readBuffer = new ReadBuffer<>(bufferSize);
+    }
+
+    /**
+     * Sets the policy that decides which entries are evicted when the cache
+     * is too full, for example {@link SlruPolicy} or
+     * {@link WindowTinyLfuPolicy} for workloads with scans that would flush
+     * the hot entries out of an LRU cache. The entries already in the cache
+     * are handed to the new policy from least to most recently used.
+     *
+     * @param evictionPolicy the policy to use, or null for plain LRU.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized void setEvictionPolicy(EvictionPolicy<K> evictionPolicy) {
+        drainReadBuffer();
+        this.evictionPolicy = evictionPolicy;
+        if (evictionPolicy != null) {
+            evictionPolicy.clear();
+        }
+        LinkedListNode<K> node = lastAccessedList.getLast();
+        for (int i = map.size(); i > 0 && node != null; i--) {
+            CacheObject<V> cacheObject = map.get(node.object);
+            cacheObject.policyHandle = evictionPolicy == null ? null : evictionPolicy.recordInsert(node.object);
+            node = node.previous;
+        }
+    }
+
+    /**
+     * Returns the eviction policy of the cache.
+     *
+     * @return the eviction policy, or null if the cache evicts plain LRU.
+     */
+    public EvictionPolicy<K> getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    /**
+     * Writes the entries of the cache to a snapshot file, from least to most
+     * recently used, with the time they were added and their own expiry time.
+     * The entries are collected under the cache lock, but encoded and written
+     * without holding it. The file is replaced in a single step, so a crash
+     * while writing leaves the previous snapshot intact. Expired entries and
+     * null keys or values are left out.
+     *
+     * @param file the snapshot file.
+     * @param keyCodec turns keys into bytes.
+     * @param valueCodec turns values into bytes.
+     * @return the number of entries written.
+     * @throws IOException if the snapshot could not be written.
+     */
+    @SuppressWarnings("unchecked")
+    public int writeSnapshot(Path file, ValueCodec<K> keyCodec, ValueCodec<V> valueCodec) throws IOException {
+        List<K> keys;
+        List<CacheObject<V>> entries;
+        synchronized (this) {
+            drainReadBuffer();
+            int size = map.size();
+            keys = new ArrayList<>(size);
+            entries = new ArrayList<>(size);
+            LinkedListNode<K> node = lastAccessedList.getLast();
+            for (int i = size; i > 0 && node != null; i--) {
+                CacheObject<V> cacheObject = map.get(node.object);
+                if (node.object != null && cacheObject.object != null && !isExpired(cacheObject)) {
+                    keys.add(node.object);
+                    entries.add(cacheObject);
+                }
+                node = node.previous;
+            }
+        }
+        int written;
+        try (CacheSnapshotFile.Writer writer = new CacheSnapshotFile.Writer(file)) {
+            for (int i = 0; i < keys.size(); i++) {
+                CacheObject<V> cacheObject = entries.get(i);
+                LinkedListNode<?> ageNode = cacheObject.ageListNode;
+                LinkedListNode<?> timerNode = cacheObject.timerNode;
+                if (ageNode == null) {
+                    // Removed since we collected it.
+                    continue;
+                }
+                writer.write(keyCodec.encode(keys.get(i)), valueCodec.encode(cacheObject.object),
+                        ageNode.timestamp, timerNode == null ? -1 : timerNode.timestamp);
+            }
+            writer.commit();
+            written = writer.count();
+        }
+        return written;
+    }
+
+    /**
+     * Adds the entries of a snapshot written by
+     * {@link #writeSnapshot(Path, ValueCodec, ValueCodec)} to the cache. The
+     * entries keep their access order and the time they were added, so they
+     * expire and refresh as if the cache had never been restarted. Entries
+     * that expired in the meantime are skipped, and keys already in the cache
+     * keep their current value.
+     *
+     * @param file the snapshot file.
+     * @param keyCodec turns bytes into keys.
+     * @param valueCodec turns bytes into values.
+     * @return the number of entries restored.
+     * @throws IOException if the snapshot could not be read or is corrupt.
+     */
+    @SuppressWarnings("unchecked")
+    public int readSnapshot(Path file, ValueCodec<K> keyCodec, ValueCodec<V> valueCodec) throws IOException {
+        final List<K> keys = new ArrayList<>();
+        final List<V> values = new ArrayList<>();
+        final List<long[]> times = new ArrayList<>();
+        // Decode without holding the lock.
+        CacheSnapshotFile.read(file, (key, value, timestamp, expireTime) -> {
+            keys.add(keyCodec.decode(key));
+            values.add(valueCodec.decode(value));
+            times.add(new long[] {timestamp, expireTime});
+        });
+        // The records are in access order; work out their order of age,
+        // newest first, before taking the lock.
+        List<Integer> byAge = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            byAge.add(i);
+        }
+        byAge.sort((a, b) -> Long.compare(times.get(b)[0], times.get(a)[0]));
+        LinkedListNode<K>[] restoredNodes = (LinkedListNode<K>[]) new LinkedListNode<?>[keys.size()];
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            int restored = 0;
+            for (int i = 0; i < keys.size(); i++) {
+                K key = keys.get(i);
+                long timestamp = times.get(i)[0];
+                long expireTime = times.get(i)[1];
+                if (map.containsKey(key) || (expireTime > 0 && expireTime <= now)
+                        || (maxLifetime > 0 && now - maxLifetime > timestamp)) {
+                    continue;
+                }
+                put(key, values.get(i), expireTime > 0 ? expireTime - now : -1);
+                CacheObject<V> cacheObject = map.get(key);
+                if (cacheObject != null) {
+                    cacheObject.ageListNode.timestamp = timestamp;
+                    restoredNodes[i] = (LinkedListNode<K>) cacheObject.ageListNode;
+                    restored++;
+                }
+            }
+            // The entries went into the age list in access order. Take out
+            // the ones still in the cache and merge them, already in order of
+            // age, with the entries that were there before.
+            for (int i = 0; i < keys.size(); i++) {
+                LinkedListNode<K> node = restoredNodes[i];
+                if (node != null) {
+                    CacheObject<V> cacheObject = map.get(keys.get(i));
+                    if (cacheObject != null && cacheObject.ageListNode == node) {
+                        node.remove();
+                    } else {
+                        // Evicted again by a later record.
+                        restoredNodes[i] = null;
+                    }
+                }
+            }
+            LinkedList<K> sorted = new LinkedList<>();
+            LinkedListNode<K> existing = ageList.getFirst();
+            for (int i : byAge) {
+                LinkedListNode<K> node = restoredNodes[i];
+                if (node == null) {
+                    continue;
+                }
+                while (existing != null && existing.timestamp >= node.timestamp) {
+                    existing.remove();
+                    sorted.addLast(existing);
+                    existing = ageList.getFirst();
+                }
+                sorted.addLast(node);
+            }
+            while (existing != null) {
+                existing.remove();
+                sorted.addLast(existing);
+                existing = ageList.getFirst();
+            }
+            ageList = sorted;
+            return restored;
+        }
+    }
+
+    /**
+     * Writes a snapshot every <tt>intervalMillis</tt> on the checkpoint
+     * thread of {@link CacheMaintenance}, so a restarted process can restore
+     * a recent copy of the cache with
+     * {@link #readSnapshot(Path, ValueCodec, ValueCodec)}.
+     *
+     * @param file the snapshot file.
+     * @param keyCodec turns keys into bytes.
+     * @param valueCodec turns values into bytes.
+     * @param intervalMillis the time between two checkpoints in milliseconds,
+     *      or -1 to stop checkpointing.
+     */
+    public synchronized void setCheckpoint(final Path file, final ValueCodec<K> keyCodec,
+            final ValueCodec<V> valueCodec, long intervalMillis) {
+        if (checkpointTask != null) {
+            checkpointTask.cancel(false);
+            checkpointTask = null;
+        }
+        if (intervalMillis > 0) {
+            // Only use the cache handed in, the task must not keep this one alive.
+            ScheduledExecutorService scheduler = CacheMaintenance.checkpointExecutor();
+            checkpointTask = CacheMaintenance.schedule(scheduler, this, intervalMillis, cache -> {
+                try {
+                    cache.writeSnapshot(file, keyCodec, valueCodec);
+                } catch (IOException e) {
+                    System.out.println("Cache: " + cache.getName() + " -- checkpoint to " + file
+                            + " failed: " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns true if hits are recorded in a read buffer instead of reordering
+     * the accessed list under the cache lock.
+     *
+     * @return true if read buffer mode is enabled.
+     */
+    public boolean isReadBufferEnabled() {
+        return readBuffer != null;
+    }
+
+    /**
+     * Has the maintenance thread replay the buffered hits, unless a drain is
+     * already pending. The reader returns right away; only the maintenance
+     * thread waits for the cache lock.
+     */
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            try {
+                CacheMaintenance.executor().execute(() -> {
+                    try {
+                        drainReadBuffer();
+                    } finally {
+                        draining.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                draining.set(false);
+            }
+        }
+    }
+
+    /**
+     * Moves every buffered hit to the front of the accessed list. Entries that
+     * have been removed in the meantime have no list node any more and are
+     * skipped, as are entries dropped by {@link #clear()}, which still have
+     * their node but are no longer in the map.
+     */
+    @SuppressWarnings("unchecked")
+    protected synchronized void drainReadBuffer() {
+        ReadBuffer<CacheObject<V>> buffer = readBuffer;
+        if (buffer == null) {
+            return;
+        }
+        buffer.drain(cacheObject -> {
+            LinkedListNode<K> node = (LinkedListNode<K>) cacheObject.lastAccessedListNode;
+            if (node != null && map.get(node.object) == cacheObject) {
+                node.remove();
+                lastAccessedList.addFirst(node);
+                if (cacheObject.policyHandle != null) {
+                    evictionPolicy.recordAccess(cacheObject.policyHandle);
+                }
+            }
+        });
+    }
+
+    /**
+     * Checks whether a single entry is older than the maximum defined age.
+     * Used by lookups that do not hold the cache lock, so the node reference
+     * may be cleared concurrently.
+     *
+     * @param cacheObject the entry to check.
+     * @return true if the entry is expired or no longer in the cache.
+     */
+    private boolean isExpired(CacheObject<V> cacheObject) {
+        LinkedListNode<?> ageNode = cacheObject.ageListNode;
+        LinkedListNode<?> timerNode = cacheObject.timerNode;
+        if (ageNode == null) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        if (timerNode != null && now >= timerNode.timestamp) {
+            return true;
+        }
+        return maxLifetime > 0 && now - maxLifetime > ageNode.timestamp;
+    }
+
+    /**
+     * Moves expiration off the lookup path. Expired entries are then removed
+     * by a task on the shared {@link CacheMaintenance} scheduler, which runs
+     * every <tt>intervalMillis</tt> and removes at most
+     * <tt>maxEntriesPerSweep</tt> entries per run, so no single caller pays
+     * for expiring a large burst of entries. Lookups only check the timestamp
+     * of the entry they hit.
+     *
+     * @param intervalMillis the time between two sweeps in milliseconds, or -1
+     *      to go back to expiring entries on every lookup.
+     * @param maxEntriesPerSweep the maximum number of entries removed per sweep.
+     */
+    public synchronized void setExpirySweep(long intervalMillis, int maxEntriesPerSweep) {
+        if (sweepTask != null) {
+            sweepTask.cancel(false);
+            sweepTask = null;
+        }
+        this.sweepInterval = intervalMillis;
+        this.maxEntriesPerSweep = maxEntriesPerSweep;
+        if (intervalMillis > 0) {
+            sweepTask = CacheMaintenance.schedule(this, intervalMillis, DefaultCache::sweepExpiredEntries);
+        }
+    }
+
+    /**
+     * Returns the time between two background expiry sweeps.
+     *
+     * @return the sweep interval in milliseconds, -1 if sweeping is disabled.
+     */
+    public long getSweepInterval() {
+        return sweepInterval;
+    }
+
+    /**
+     * Returns the maximum number of expired entries a background sweep removes.
+     *
+     * @return the maximum number of entries removed per sweep.
+     */
+    public int getMaxEntriesPerSweep() {
+        return maxEntriesPerSweep;
+    }
+
+    /**
+     * Bounds the work a single write does to make room. A write that finds
+     * the cache too full evicts at most <tt>maxEvictionsPerWrite</tt> entries
+     * and expires at most as many, instead of shrinking the cache to 90% in
+     * one go, so no caller pays for a large burst of evictions. The cache may
+     * then sit between 90% and 100% of its maximum size; it only evicts more
+     * than the limit when a write pushes it over the maximum size itself, so
+     * memory stays bounded.<p>
+     *
+     * With a positive <tt>intervalMillis</tt> a task on the shared
+     * {@link CacheMaintenance} scheduler shrinks the cache to 90% in the
+     * background, taking the cache lock for one batch at a time. Each batch
+     * is a task of its own, so other caches' maintenance runs in between.
+     *
+     * @param maxEvictionsPerWrite the maximum number of entries a write
+     *      evicts, or -1 to evict down to 90% on the write itself.
+     * @param intervalMillis the time between two background evictions in
+     *      milliseconds, or -1 to only evict on writes.
+     */
+    public synchronized void setIncrementalEviction(int maxEvictionsPerWrite, long intervalMillis) {
+        if (evictionTask != null) {
+            evictionTask.cancel(false);
+            evictionTask = null;
+        }
+        this.maxEvictionsPerWrite = maxEvictionsPerWrite;
+        if (maxEvictionsPerWrite > 0 && intervalMillis > 0) {
+            evictionTask = CacheMaintenance.schedule(this, intervalMillis, DefaultCache::evictInBackground);
+        }
+    }
+
+    /**
+     * Returns the maximum number of entries a single write evicts.
+     *
+     * @return the limit, -1 if writes evict down to 90% at once.
+     */
+    public int getMaxEvictionsPerWrite() {
+        return maxEvictionsPerWrite;
+    }
+
+    /**
+     * Evicts one batch toward 90% of the maximum size. If more is left, the
+     * next batch is queued on the maintenance thread behind whatever else is
+     * waiting there, instead of holding the thread until the cache is done.
+     */
+    private void evictInBackground() {
+        int batch = maxEvictionsPerWrite;
+        if (batch <= 0 || evictBatch(batch) < batch || !evictionQueued.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            CacheMaintenance.executor().execute(() -> {
+                evictionQueued.set(false);
+                evictInBackground();
+            });
+        } catch (RejectedExecutionException e) {
+            evictionQueued.set(false);
+        }
+    }
+
+    /**
+     * Makes room for one batch: replays buffered hits, expires and evicts at
+     * most <tt>maxEntries</tt> entries, or more if the cache is over its
+     * maximum size.
+     *
+     * @return the number of entries evicted.
+     */
+    private synchronized int evictBatch(int maxEntries) {
+        if (maxCacheSize < 0 || cacheSize <= (int)(maxCacheSize * .90)) {
+            return 0;
+        }
+        drainReadBuffer();
+        if (sweepInterval <= 0) {
+            deleteExpiredEntries(maxEntries);
+        }
+        return evict(maxEntries);
+    }
+
+    /**
+     * Runs one background sweep.
+     *
+     * @return the number of expired entries removed.
+     */
+    protected synchronized int sweepExpiredEntries() {
+        return deleteExpiredEntries(maxEntriesPerSweep);
+    }
+
     /**
      * Clears all entries out of cache where the entries are older than the
-     * maximum defined age.
+     * maximum defined age. When background sweeping is enabled this is left
+     * to the sweeper.
      */
     protected void deleteExpiredEntries() {
+        if (sweepInterval > 0) {
+            return;
+        }
+        deleteExpiredEntries(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Clears at most <tt>maxEntries</tt> of the entries that are older than
+     * the maximum defined age, oldest first. Entries with a lifetime of
+     * their own are expired by advancing the timer wheel, within the same
+     * budget; entries over the budget are expired by the next call.
+     *
+     * @param maxEntries the maximum number of entries to remove.
+     * @return the number of entries removed.
+     */
+    protected synchronized int deleteExpiredEntries(int maxEntries) {
+        int removed = 0;
+        // Entries with a lifetime of their own are expired by the timer wheel.
+        if (timerWheel != null) {
+            removed += timerWheel.advance(System.currentTimeMillis(), maxEntries,
+                    key -> removeEntry(key, RemovalCause.EXPIRED));
+        }
         // Check if expiration is turned on.
         if (maxLifetime <= 0) {
-            return;
+            return removed;
         }
 
         // Remove all old entries. To do this, we remove objects from the end
@@ -682,7 +1761,7 @@ public class DefaultCache<K, V> implements Map<K, V> {
         LinkedListNode<K> node = ageList.getLast();
         // If there are no entries in the age list, return.
         if (node == null) {
-            return;
+            return removed;
         }
 
         // Determine the expireTime, which is the moment in time that elements
@@ -690,26 +1769,29 @@ public class DefaultCache<K, V> implements Map<K, V> {
         // if the expire time is greater than the expire time.
         long expireTime = System.currentTimeMillis() - maxLifetime;
 
-        while (expireTime > node.timestamp) {
+        while (removed < maxEntries && expireTime > node.timestamp) {
             // Remove the object
-            remove(node.object);
+            removeEntry(node.object, RemovalCause.EXPIRED);
+            removed++;
 
             // Get the next node.
             node = ageList.getLast();
             // If there are no more entries in the age list, return.
             if (node == null) {
-                return;
+                return removed;
             }
         }
+        return removed;
     }
 
     /**
      * Removes objects from cache if the cache is too full. "Too full" is
      * defined as within 3% of the maximum cache size. Whenever the cache is
      * is too big, the least frequently used elements are deleted until the
-     * cache is at least 10% empty.
+     * cache is at least 10% empty, or until the per-write limit of
+     * {@link #setIncrementalEviction(int, long)} is reached.
      */
-    protected final void cullCache() {
+    protected final synchronized void cullCache() {
         // Check if a max cache size is defined.
         if (maxCacheSize < 0) {
             return;
@@ -719,19 +1801,156 @@ public class DefaultCache<K, V> implements Map<K, V> {
         // cache until it's 10% free.
         int desiredSize = (int)(maxCacheSize * .97);
         if (cacheSize >= desiredSize) {
+            if (maxEvictionsPerWrite > 0) {
+                evictBatch(maxEvictionsPerWrite);
+                return;
+            }
+            // Make sure buffered hits are reflected in the accessed list
+            // before choosing what to evict.
+            drainReadBuffer();
             // First, delete any old entries to see how much memory that frees.
             deleteExpiredEntries();
-            desiredSize = (int)(maxCacheSize * .90);
-            if (cacheSize > desiredSize) {
-                long t = System.currentTimeMillis();
-                do {
-                    // Get the key and invoke the remove method on it.
-                    remove(lastAccessedList.getLast().object);
-                } while (cacheSize > desiredSize);
-                t = System.currentTimeMillis() - t;
-                System.out.println("Cache " + name + " was full, shrinked to 90% in " + t + "ms.");
+            evict(Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Evicts entries until the cache is at 90% of its maximum size, or
+     * <tt>maxEntries</tt> entries were evicted and the cache is no longer
+     * over its maximum size.
+     *
+     * @return the number of entries evicted.
+     */
+    private int evict(int maxEntries) {
+        int desiredSize = (int)(maxCacheSize * .90);
+        if (cacheSize <= desiredSize) {
+            return 0;
+        }
+        long t = System.nanoTime();
+        int evicted = 0;
+        while (cacheSize > desiredSize && (evicted < maxEntries || cacheSize > maxCacheSize)) {
+            // Get the key and invoke the remove method on it.
+            K victim = evictionPolicy != null ? evictionPolicy.victim() : null;
+            if (victim == null || !map.containsKey(victim)) {
+                LinkedListNode<K> last = lastAccessedList.getLast();
+                if (last == null) {
+                    break;
+                }
+                victim = last.object;
+            }
+            removeEntry(victim, RemovalCause.SIZE);
+            evicted++;
+        }
+        stats.recordEvictionRun(System.nanoTime() - t);
+        return evicted;
+    }
+
+    /**
+     * JMX view of the statistics of a cache. Every attribute read takes a new
+     * snapshot, which is cheap and never blocks the cache. The bean tracks
+     * the name it is registered under, so the cache only ever unregisters
+     * its own bean.
+     */
+    private static final class StatsMXBean implements CacheStatsMXBean, MBeanRegistration {
+
+        private final DefaultCache<?, ?> cache;
+
+        private ObjectName pendingName;
+
+        /**
+         * The name this bean is registered under, null once it is removed.
+         */
+        volatile ObjectName registeredName;
+
+        StatsMXBean(DefaultCache<?, ?> cache) {
+            this.cache = cache;
+        }
+
+        public ObjectName preRegister(MBeanServer server, ObjectName name) {
+            pendingName = name;
+            return name;
+        }
+
+        public void postRegister(Boolean registrationDone) {
+            if (Boolean.TRUE.equals(registrationDone)) {
+                registeredName = pendingName;
             }
         }
+
+        public void preDeregister() {
+        }
+
+        public void postDeregister() {
+            registeredName = null;
+        }
+
+        public String getName() {
+            return cache.getName();
+        }
+
+        public long getHitCount() {
+            return cache.stats().hitCount();
+        }
+
+        public long getMissCount() {
+            return cache.stats().missCount();
+        }
+
+        public double getHitRate() {
+            return cache.stats().hitRate();
+        }
+
+        public long getLoadSuccessCount() {
+            return cache.stats().loadSuccessCount();
+        }
+
+        public long getLoadFailureCount() {
+            return cache.stats().loadFailureCount();
+        }
+
+        public double getAverageLoadPenalty() {
+            return cache.stats().averageLoadPenalty();
+        }
+
+        public long getEvictionCount() {
+            return cache.stats().evictionCount();
+        }
+
+        public long getExpiredCount() {
+            return cache.stats().expiredCount();
+        }
+
+        public long getExplicitRemovalCount() {
+            return cache.stats().explicitRemovalCount();
+        }
+
+        public long getEntryCount() {
+            return cache.stats().entryCount();
+        }
+
+        public double getAverageWeight() {
+            return cache.stats().averageWeight();
+        }
+
+        public long getCacheSize() {
+            return cache.getCacheSize();
+        }
+
+        public long getMaxCacheSize() {
+            return cache.getMaxCacheSize();
+        }
+
+        public long getEvictionLatencyP50() {
+            return cache.stats().evictionLatencyPercentile(50);
+        }
+
+        public long getEvictionLatencyP99() {
+            return cache.stats().evictionLatencyPercentile(99);
+        }
+
+        public long getEvictionLatencyMax() {
+            return cache.stats().evictionLatencyPercentile(100);
+        }
     }
 
     /**
@@ -742,9 +1961,10 @@ public class DefaultCache<K, V> implements Map<K, V> {
     private static class CacheObject<V> {
 
         /**
-         * Underlying object wrapped by the CacheObject.
+         * Underlying object wrapped by the CacheObject. Volatile because a
+         * refresh swaps it while lookups read it without the lock.
          */
-        public V object;
+        public volatile V object;
 
         /**
          * The size of the Cacheable object. The size of the Cacheable
@@ -769,6 +1989,19 @@ public class DefaultCache<K, V> implements Map<K, V> {
          */
         public LinkedListNode<?> ageListNode;
 
+        /**
+         * The timer of an entry added with a lifetime of its own; its
+         * timestamp is the moment the entry expires. Null for entries that
+         * only use the maximum lifetime of the cache.
+         */
+        public LinkedListNode<?> timerNode;
+
+        /**
+         * The handle the eviction policy gave out for this entry, if the
+         * cache uses an eviction policy.
+         */
+        public Object policyHandle;
+
         /**
          * Creates a new cache object wrapper. The size of the Cacheable object
          * must be passed in in order to prevent another possibly expensive
@@ -0,0 +1,48 @@
+/**
+ * Decides which entry a cache evicts when it is too full. The cache tells the
+ * policy about every insert, access and removal, and asks it for a victim
+ * while it needs to free space. The policy hands out an opaque handle per
+ * entry, which the cache stores next to the entry, so no policy needs a hash
+ * lookup of its own.<p>
+ *
+ * Implementations are not thread safe; the cache only calls them while
+ * holding its lock.
+ * @param <K> <K>
+ */
+public interface EvictionPolicy<K> {
+
+    /**
+     * Records that a key was added to the cache.
+     *
+     * @param key the key that was added.
+     * @return the handle the cache has to pass back for this entry.
+     */
+    Object recordInsert(K key);
+
+    /**
+     * Records a cache hit.
+     *
+     * @param handle the handle returned when the entry was added.
+     */
+    void recordAccess(Object handle);
+
+    /**
+     * Records that an entry left the cache, for whatever reason.
+     *
+     * @param handle the handle returned when the entry was added.
+     */
+    void recordRemoval(Object handle);
+
+    /**
+     * Returns the key that should be evicted next. The cache is expected to
+     * remove it, which in turn calls {@link #recordRemoval(Object)}.
+     *
+     * @return the key to evict, or null if the policy tracks no entries.
+     */
+    K victim();
+
+    /**
+     * Forgets all entries.
+     */
+    void clear();
+}
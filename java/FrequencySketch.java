@@ -0,0 +1,133 @@
+/**
+ * Count-min sketch of 4-bit counters used to estimate how often a key has
+ * been seen recently. Every key maps to four counters, one per hash function,
+ * and its frequency is the smallest of the four. Once the number of recorded
+ * accesses reaches ten times the expected number of entries, all counters are
+ * halved, so old popularity fades away.<p>
+ *
+ * Sixteen counters are packed into each long, so the sketch costs about
+ * 8 bytes per expected entry.
+ */
+public class FrequencySketch {
+
+    /**
+     * Seeds of the four hash functions.
+     */
+    private static final long[] SEED = {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+    /**
+     * Mask that keeps the lower three bits of every counter when halving.
+     */
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    /**
+     * Mask used to add up the bits that are lost when halving.
+     */
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    private long[] table;
+    private final int tableMask;
+
+    /**
+     * Number of accesses after which the counters are halved.
+     */
+    private final int sampleSize;
+
+    /**
+     * Number of accesses recorded since the last halving.
+     */
+    private int size;
+
+    /**
+     * @param expectedSize the expected maximum number of entries in the cache.
+     */
+    public FrequencySketch(int expectedSize) {
+        int length = 1;
+        while (length < Math.max(expectedSize, 16)) {
+            length <<= 1;
+        }
+        table = new long[length];
+        tableMask = length - 1;
+        sampleSize = 10 * Math.max(expectedSize, 16);
+    }
+
+    /**
+     * Returns the estimated number of recent accesses of the key, at most 15.
+     *
+     * @param key the key.
+     * @return the estimated frequency.
+     */
+    public int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Records an access of the key.
+     *
+     * @param key the key.
+     */
+    public void increment(Object key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++size == sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Forgets all recorded accesses. A fresh table is swapped in rather than
+     * zeroing the old one, so clearing a large sketch under the cache lock
+     * costs an allocation instead of a pass over every counter.
+     */
+    public void clear() {
+        table = new long[table.length];
+        size = 0;
+    }
+
+    private boolean incrementAt(int i, int j) {
+        int offset = j << 2;
+        long mask = 0xfL << offset;
+        if ((table[i] & mask) != mask) {
+            table[i] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Halves every counter.
+     */
+    private void reset() {
+        int count = 0;
+        for (int i = 0; i < table.length; i++) {
+            count += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size >>> 1) - (count >>> 2);
+    }
+
+    private int indexOf(int item, int i) {
+        long hash = (item + SEED[i]) * SEED[i];
+        hash += hash >>> 32;
+        return ((int) hash) & tableMask;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
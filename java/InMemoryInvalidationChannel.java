@@ -0,0 +1,25 @@
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+
+/**
+ * {@link InvalidationChannel} that delivers messages to the subscribers in
+ * the same JVM, synchronously on the publishing thread. Useful for tests and
+ * for several near caches over the same store within one process.
+ * @param <K> <K>
+ */
+public class InMemoryInvalidationChannel<K> implements InvalidationChannel<K> {
+
+    private final List<Consumer<? super K>> listeners = new CopyOnWriteArrayList<>();
+
+    public void publish(K key) {
+        for (Consumer<? super K> listener : listeners) {
+            listener.accept(key);
+        }
+    }
+
+    public void subscribe(Consumer<? super K> listener) {
+        listeners.add(listener);
+    }
+}
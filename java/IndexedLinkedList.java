@@ -0,0 +1,285 @@
+import java.util.Arrays;
+
+
+/**
+ * Doubly linked list kept in parallel arrays instead of node objects. An
+ * element is addressed by the index of its slot, which stays the same until
+ * the element is removed. Removed slots go on a free list and are reused by
+ * the next add, so adding, removing and moving elements to the front does
+ * not allocate once the arrays have grown to the working set; the links of
+ * neighbouring elements also tend to sit next to each other in memory.<p>
+ *
+ * Slot 0 is the sentinel that closes the ring, like the head node of
+ * {@link LinkedList}. Methods that return an index return {@link #NONE}
+ * where LinkedList would return null.<p>
+ *
+ * Indexes of removed elements must not be used any more; like a node that
+ * was removed from a LinkedList, they are not checked on every call.
+ * @param <E> <E>
+ */
+public class IndexedLinkedList<E> {
+
+    /**
+     * Returned instead of an index when there is no such element.
+     */
+    public static final int NONE = -1;
+
+    private static final int HEAD = 0;
+
+    /**
+     * Marks a slot on the free list in the previous array.
+     */
+    private static final int FREE = -2;
+
+    private int[] previous;
+
+    /**
+     * Link to the next element, or to the next free slot for free slots.
+     */
+    private int[] next;
+
+    private Object[] objects;
+
+    private long[] timestamps;
+
+    /**
+     * First slot of the free list, NONE if it is empty.
+     */
+    private int free = NONE;
+
+    /**
+     * Slots from here on have never been used.
+     */
+    private int top = 1;
+
+    private int size;
+
+    /**
+     * Creates a new list with room for 16 elements.
+     */
+    public IndexedLinkedList() {
+        this(16);
+    }
+
+    /**
+     * @param initialCapacity the number of elements the list holds before
+     *      its arrays have to grow.
+     */
+    public IndexedLinkedList(int initialCapacity) {
+        int capacity = Math.max(2, initialCapacity + 1);
+        previous = new int[capacity];
+        next = new int[capacity];
+        objects = new Object[capacity];
+        timestamps = new long[capacity];
+    }
+
+    /**
+     * Returns the index of the first element in the list.
+     *
+     * @return the first element of the list, or NONE if the list is empty.
+     */
+    public int getFirst() {
+        int index = next[HEAD];
+        return index == HEAD ? NONE : index;
+    }
+
+    /**
+     * Returns the index of the last element in the list.
+     *
+     * @return the last element of the list, or NONE if the list is empty.
+     */
+    public int getLast() {
+        int index = previous[HEAD];
+        return index == HEAD ? NONE : index;
+    }
+
+    /**
+     * @param index an element of the list.
+     * @return the element after it, or NONE if it is the last one.
+     */
+    public int next(int index) {
+        int n = next[index];
+        return n == HEAD ? NONE : n;
+    }
+
+    /**
+     * @param index an element of the list.
+     * @return the element before it, or NONE if it is the first one.
+     */
+    public int previous(int index) {
+        int p = previous[index];
+        return p == HEAD ? NONE : p;
+    }
+
+    /**
+     * Adds an object to the beginning of the list.
+     *
+     * @param object the object to add to the beginning of the list.
+     * @return the index of the new element.
+     */
+    public int addFirst(E object) {
+        int index = allocate(object);
+        link(index, HEAD, next[HEAD]);
+        return index;
+    }
+
+    /**
+     * Adds an object to the end of the list.
+     *
+     * @param object the object to add to the end of the list.
+     * @return the index of the new element.
+     */
+    public int addLast(E object) {
+        int index = allocate(object);
+        link(index, previous[HEAD], HEAD);
+        return index;
+    }
+
+    /**
+     * Moves an element to the beginning of the list.
+     *
+     * @param index an element of the list.
+     */
+    public void moveToFront(int index) {
+        if (next[HEAD] == index) {
+            return;
+        }
+        unlink(index);
+        link(index, HEAD, next[HEAD]);
+    }
+
+    /**
+     * Moves an element to the end of the list.
+     *
+     * @param index an element of the list.
+     */
+    public void moveToBack(int index) {
+        if (previous[HEAD] == index) {
+            return;
+        }
+        unlink(index);
+        link(index, previous[HEAD], HEAD);
+    }
+
+    /**
+     * Removes an element from the list and frees its slot.
+     *
+     * @param index an element of the list.
+     * @return the object of the element.
+     */
+    @SuppressWarnings("unchecked")
+    public E remove(int index) {
+        if (index <= HEAD || index >= top || previous[index] == FREE) {
+            throw new IllegalArgumentException("Not an element of the list: " + index);
+        }
+        unlink(index);
+        E object = (E) objects[index];
+        objects[index] = null;
+        previous[index] = FREE;
+        next[index] = free;
+        free = index;
+        size--;
+        return object;
+    }
+
+    /**
+     * @param index an element of the list.
+     * @return the object of the element.
+     */
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        return (E) objects[index];
+    }
+
+    /**
+     * @param index an element of the list.
+     * @return the timestamp of the element.
+     * @see LinkedListNode#timestamp
+     */
+    public long getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    /**
+     * @param index an element of the list.
+     * @param timestamp the new timestamp of the element.
+     */
+    public void setTimestamp(int index, long timestamp) {
+        timestamps[index] = timestamp;
+    }
+
+    /**
+     * @return the number of elements in the list.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Erases all elements in the list. The arrays keep their size.
+     */
+    public void clear() {
+        Arrays.fill(objects, 0, top, null);
+        next[HEAD] = previous[HEAD] = HEAD;
+        free = NONE;
+        top = 1;
+        size = 0;
+    }
+
+    /**
+     * Returns a String representation of the list with a comma delimited
+     * list of all the elements in the list.
+     *
+     * @return a String representation of the list.
+     */
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        for (int index = next[HEAD]; index != HEAD; index = next[index]) {
+            buf.append(objects[index]).append(", ");
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Takes a slot from the free list, or a fresh one, growing the arrays if
+     * every slot is in use.
+     */
+    private int allocate(E object) {
+        int index = free;
+        if (index != NONE) {
+            free = next[index];
+        } else {
+            if (top == objects.length) {
+                grow();
+            }
+            index = top++;
+        }
+        objects[index] = object;
+        timestamps[index] = 0;
+        size++;
+        return index;
+    }
+
+    private void grow() {
+        int capacity = objects.length * 2;
+        previous = Arrays.copyOf(previous, capacity);
+        next = Arrays.copyOf(next, capacity);
+        objects = Arrays.copyOf(objects, capacity);
+        timestamps = Arrays.copyOf(timestamps, capacity);
+    }
+
+    private void link(int index, int before, int after) {
+        previous[index] = before;
+        next[index] = after;
+        next[before] = index;
+        previous[after] = index;
+    }
+
+    private void unlink(int index) {
+        int p = previous[index];
+        int n = next[index];
+        next[p] = n;
+        previous[n] = p;
+    }
+}
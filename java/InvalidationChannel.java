@@ -0,0 +1,27 @@
+import java.util.function.Consumer;
+
+
+/**
+ * Publish/subscribe channel a {@link NearCache} uses to tell the other
+ * processes sharing the same backing store that a key changed. Backed by
+ * Redis pub/sub or any other message bus in production;
+ * {@link InMemoryInvalidationChannel} connects caches within one JVM.
+ * @param <K> <K>
+ */
+public interface InvalidationChannel<K> {
+
+    /**
+     * Tells every subscriber that the value of a key changed.
+     *
+     * @param key the key, or null if every key changed.
+     */
+    void publish(K key);
+
+    /**
+     * Registers a listener that is called with every published key,
+     * including the ones published by the same process.
+     *
+     * @param listener called with the key, or null if every key changed.
+     */
+    void subscribe(Consumer<? super K> listener);
+}
@@ -80,18 +80,14 @@ public class LinkedList<E> {
     }
 
     /**
-     * Erases all elements in the list and re-initializes it.
+     * Erases all elements in the list and re-initializes it, in constant
+     * time. The nodes that were in the list are not unlinked one by one: they
+     * stay linked to each other and to the old head, so removing one of them
+     * later cannot disturb this list, and they are garbage collected as a
+     * whole once nothing else references them.
      */
     public void clear() {
-        // Remove all references in the list.
-        LinkedListNode<E> node = getLast();
-        while (node != null) {
-            node.remove();
-            node = getLast();
-        }
-
-        // Re-initialize.
-        head.next = head.previous = head;
+        head = new LinkedListNode<>();
     }
 
     /**
@@ -1,3 +1,8 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
 import org.slf4j.Marker;
 // 当时完全不懂包装slf4j什么意思,还以为自己针对市面上的logger进行了封装处理，上次开会的时候这么说,我为了logger的时候像andriod能写个tag，WTF，难道你logger.info('tag:{},xxxxx',tag)这样不行么？为了六个字符创建一个logger和一个loggerFactory
 public class Logger {
@@ -8,11 +13,99 @@ public class Logger {
     public static String separator = " ";
 
     public Logger(Class clazz) {
-        logger = org.slf4j.LoggerFactory.getLogger(clazz);
+        logger = new AsyncSlf4jLogger(org.slf4j.LoggerFactory.getLogger(clazz));
     }
 
     public Logger(String name) {
-        logger = org.slf4j.LoggerFactory.getLogger(name);
+        logger = new AsyncSlf4jLogger(org.slf4j.LoggerFactory.getLogger(name));
+    }
+
+    /**
+     * 打开异步模式，所有Logger都生效：日志先放进环形缓冲区，由单独的线程格式化和写出
+     *
+     * @param bufferSize 缓冲区能放多少条
+     * @param policy 缓冲区满了以后的处理方式
+     * @param sampleRate SAMPLE策略下每多少条留一条，其他策略忽略
+     */
+    public static void enableAsync(int bufferSize, AsyncLogDispatcher.OverflowPolicy policy, int sampleRate) {
+        AsyncLogDispatcher.install(new AsyncLogDispatcher(bufferSize, policy, sampleRate));
+    }
+
+    /**
+     * 关掉异步模式，缓冲区里剩下的写完后返回
+     */
+    public static void disableAsync() {
+        AsyncLogDispatcher.uninstall();
+    }
+
+    /**
+     * 打开二进制日志：Tag日志编码成二进制记录写进分段文件，不再由slf4j格式化，用 {@link BinaryLogDecoder} 还原成文本
+     *
+     * @param dir 分段文件所在的目录
+     * @param segmentSize 每个分段文件的大小
+     * @throws IOException 建不了目录或者分段文件时
+     */
+    public static void enableBinary(Path dir, int segmentSize) throws IOException {
+        BinaryLogWriter.install(new BinaryLogWriter(dir, segmentSize));
+    }
+
+    /**
+     * 关掉二进制日志，Tag日志重新交给slf4j
+     */
+    public static void disableBinary() {
+        BinaryLogWriter.uninstall();
+    }
+
+    /**
+     * @return 二进制日志，可以看写了和没写进去的条数；没开时为null
+     */
+    public static BinaryLogWriter getBinaryLog() {
+        return BinaryLogWriter.installed();
+    }
+
+    /**
+     * 给Tag限流，超过的日志丢掉，定期打一条汇总说丢了多少条
+     *
+     * @param tag 日志标签
+     * @param permitsPerSecond 每秒最多打多少条
+     * @param burst 最多允许一下子打多少条
+     */
+    public static void limit(Tag tag, double permitsPerSecond, int burst) {
+        TagLimiter.limit(tag, permitsPerSecond, burst);
+    }
+
+    /**
+     * 给Tag采样，只留下一部分日志，定期打一条汇总说丢了多少条
+     *
+     * @param tag 日志标签
+     * @param rate 留下的比例，0到1之间
+     */
+    public static void sample(Tag tag, double rate) {
+        TagLimiter.sample(tag, rate);
+    }
+
+    /**
+     * 去掉Tag的限流和采样
+     *
+     * @param tag 日志标签
+     */
+    public static void unlimit(Tag tag) {
+        TagLimiter.remove(tag);
+    }
+
+    /**
+     * @param tag 日志标签
+     * @return 这个Tag因为限流和采样一共丢掉的条数
+     */
+    public static long getSuppressedCount(Tag tag) {
+        return TagLimiter.suppressedCount(tag);
+    }
+
+    /**
+     * @return 异步模式的缓冲区，可以看排队和丢弃的条数；没开异步时为null
+     */
+    public static AsyncLogDispatcher getAsyncDispatcher() {
+        return AsyncLogDispatcher.installed();
     }
 
     public String getName() {
@@ -267,7 +360,10 @@ public class Logger {
      * @param args 变量对应的参数
      */
     public void trace(Tag tag, String format, Object... args) {
-        logger.trace(merge(tag, format), args);
+        if (logger.isTraceEnabled() && TagLimiter.tryAcquire(tag, logger)
+                && !BinaryLogWriter.write(AsyncLogDispatcher.TRACE, logger, tag, format, args, null)) {
+            logger.trace(merge(tag, format), args);
+        }
     }
 
     /**
@@ -278,7 +374,10 @@ public class Logger {
      * @param e 需在日志中堆栈打印的异常
      */
     public void trace(Tag tag, String format, Throwable e) {
-        logger.trace(merge(tag, format), e);
+        if (logger.isTraceEnabled() && TagLimiter.tryAcquire(tag, logger)
+                && !BinaryLogWriter.write(AsyncLogDispatcher.TRACE, logger, tag, format, null, e)) {
+            logger.trace(merge(tag, format), e);
+        }
     }
 
     /**
@@ -289,7 +388,10 @@ public class Logger {
      * @param args 变量对应的参数
      */
     public void debug(Tag tag, String format, Object... args) {
-        logger.debug(merge(tag, format), args);
+        if (logger.isDebugEnabled() && TagLimiter.tryAcquire(tag, logger)
+                && !BinaryLogWriter.write(AsyncLogDispatcher.DEBUG, logger, tag, format, args, null)) {
+            logger.debug(merge(tag, format), args);
+        }
     }
 
     /**
@@ -300,7 +402,10 @@ public class Logger {
      * @param e 需在日志中堆栈打印的异常
      */
     public void debug(Tag tag, String format, Throwable e) {
-        logger.debug(merge(tag, format), e);
+        if (logger.isDebugEnabled() && TagLimiter.tryAcquire(tag, logger)
+                && !BinaryLogWriter.write(AsyncLogDispatcher.DEBUG, logger, tag, format, null, e)) {
+            logger.debug(merge(tag, format), e);
+        }
     }
 
     /**
@@ -311,7 +416,10 @@ public class Logger {
      * @param args 变量对应的参数
      */
     public void info(Tag tag, String format, Object... args) {
-        logger.info(merge(tag, format), args);
+        if (logger.isInfoEnabled() && TagLimiter.tryAcquire(tag, logger)
+                && !BinaryLogWriter.write(AsyncLogDispatcher.INFO, logger, tag, format, args, null)) {
+            logger.info(merge(tag, format), args);
+        }
     }
 
     /**
@@ -322,7 +430,10 @@ public class Logger {
      * @param e 需在日志中堆栈打印的异常
      */
     public void info(Tag tag, String format, Throwable e) {
-        logger.info(merge(tag, format), e);
+        if (logger.isInfoEnabled() && TagLimiter.tryAcquire(tag, logger)
+                && !BinaryLogWriter.write(AsyncLogDispatcher.INFO, logger, tag, format, null, e)) {
+            logger.info(merge(tag, format), e);
+        }
     }
 
     /**
@@ -333,7 +444,10 @@ public class Logger {
      * @param args 变量对应的参数
      */
     public void warn(Tag tag, String format, Object... args) {
-        logger.warn(merge(tag, format), args);
+        if (logger.isWarnEnabled() && TagLimiter.tryAcquire(tag, logger)
+                && !BinaryLogWriter.write(AsyncLogDispatcher.WARN, logger, tag, format, args, null)) {
+            logger.warn(merge(tag, format), args);
+        }
     }
 
     /**
@@ -344,7 +458,10 @@ public class Logger {
      * @param e 需在日志中堆栈打印的异常
      */
     public void warn(Tag tag, String format, Throwable e) {
-        logger.warn(merge(tag, format), e);
+        if (logger.isWarnEnabled() && TagLimiter.tryAcquire(tag, logger)
+                && !BinaryLogWriter.write(AsyncLogDispatcher.WARN, logger, tag, format, null, e)) {
+            logger.warn(merge(tag, format), e);
+        }
     }
 
     /**
@@ -355,7 +472,10 @@ public class Logger {
      * @param args 变量对应的参数
      */
     public void error(Tag tag, String format, Object... args) {
-        logger.error(merge(tag, format), args);
+        if (logger.isErrorEnabled() && TagLimiter.tryAcquire(tag, logger)
+                && !BinaryLogWriter.write(AsyncLogDispatcher.ERROR, logger, tag, format, args, null)) {
+            logger.error(merge(tag, format), args);
+        }
     }
 
     /**
@@ -366,16 +486,458 @@ public class Logger {
      * @param e 需在日志中堆栈打印的异常
      */
     public void error(Tag tag, String format, Throwable e) {
-        logger.error(merge(tag, format), e);
+        if (logger.isErrorEnabled() && TagLimiter.tryAcquire(tag, logger)
+                && !BinaryLogWriter.write(AsyncLogDispatcher.ERROR, logger, tag, format, null, e)) {
+            logger.error(merge(tag, format), e);
+        }
+    }
+
+    // 下面几组是给参数算起来费事的调用用的：xxxLazy等级没开时不调用Supplier，
+    // 基本类型的重载等级没开时不装箱：byte、short变宽成int，char有自己的重载，打出来是字符；
+    // 两个参数的版本只有long，char也会变宽成long打出编码，要打字符请转成(Object)。
+    // Supplier的版本不和trace/debug…同名，免得传null的调用又多一个能匹配的重载；
+    // 也不提供Supplier...，varargs的数组等级没开时也要分配
+
+    /**
+     * trace等级日志，小于debug，参数在等级打开时才计算
+     *
+     * @param format 格式文本，{} 代表变量
+     * @param arg 计算参数的Supplier
+     */
+    public void traceLazy(String format, Supplier<?> arg) {
+        if (logger.isTraceEnabled()) {
+            logger.trace(format, arg.get());
+        }
+    }
+
+    /**
+     * trace等级日志，小于debug，参数在等级打开时才计算
+     *
+     * @param format 格式文本，{} 代表变量
+     * @param arg1 计算第一个参数的Supplier
+     * @param arg2 计算第二个参数的Supplier
+     */
+    public void traceLazy(String format, Supplier<?> arg1, Supplier<?> arg2) {
+        if (logger.isTraceEnabled()) {
+            logger.trace(format, arg1.get(), arg2.get());
+        }
+    }
+
+    /**
+     * trace等级日志，小于debug，等级打开时才装箱
+     *
+     * @param format 格式文本，{} 代表变量
+     * @param arg 参数
+     */
+    public void trace(String format, long arg) {
+        if (logger.isTraceEnabled()) {
+            logger.trace(format, (Object) arg);
+        }
+    }
+
+    /**
+     * trace等级日志，小于debug，等级打开时才装箱
+     *
+     * @param format 格式文本，{} 代表变量
+     * @param arg 参数
+     */
+    public void trace(String format, int arg) {
+        if (logger.isTraceEnabled()) {
+            logger.trace(format, (Object) arg);
+        }
+    }
+
+    /**
+     * trace等级日志，小于debug，等级打开时才装箱。char单独一个重载，不然会变宽成int，打出来的是字符的编码
+     *
+     * @param format 格式文本，{} 代表变量
+     * @param arg 参数
+     */
+    public void trace(String format, char arg) {
+        if (logger.isTraceEnabled()) {
+            logger.trace(format, (Object) arg);
+        }
+    }
+
+    /**
+     * trace等级日志，小于debug，等级打开时才装箱。byte、short、int、char都会变宽成long，
+     * char打出来的是字符的编码，要打字符请转成(Object)
+     *
+     * @param format 格式文本，{} 代表变量
+     * @param arg1 第一个参数
+     * @param arg2 第二个参数
+     */
+    public void trace(String format, long arg1, long arg2) {
+        if (logger.isTraceEnabled()) {
+            logger.trace(format, (Object) arg1, (Object) arg2);
+        }
+    }
+
+    /**
+     * debug等级日志，小于info，参数在等级打开时才计算
+     *
+     * @param format 格式文本，{} 代表变量
+     * @param arg 计算参数的Supplier
+     */
+    public void debugLazy(String format, Supplier<?> arg) {
+        if (logger.isDebugEnabled()) {
+            logger.debug(format, arg.get());
+        }
+    }
+
+    /**
+     * debug等级日志，小于info，参数在等级打开时才计算
+     *
+     * @param format 格式文本，{} 代表变量
+     * @param arg1 计算第一个参数的Supplier
+     * @param arg2 计算第二个参数的Supplier
+     */
+    public void debugLazy(String format, Supplier<?> arg1, Supplier<?> arg2) {
+        if (logger.isDebugEnabled()) {
+            logger.debug(format, arg1.get(), arg2.get());
+        }
+    }
+
+    /**
+     * debug等级日志，小于info，等级打开时才装箱
+     *
+     * @param format 格式文本，{} 代表变量
+     * @param arg 参数
+     */
+    public void debug(String format, long arg) {
+        if (logger.isDebugEnabled()) {
+            logger.debug(format, (Object) arg);
+        }
+    }
+
+    /**
+     * debug等级日志，小于info，等级打开时才装箱
+     *
+     * @param format 格式文本，{} 代表变量
+     * @param arg 参数
+     */
+    public void debug(String format, int arg) {
+        if (logger.isDebugEnabled()) {
+            logger.debug(format, (Object) arg);
+        }
+    }
+
+    /**
+     * debug等级日志，小于info，等级打开时才装箱。char单独一个重载，不然会变宽成int，打出来的是字符的编码
+     *
+     * @param format 格式文本，{} 代表变量
+     * @param arg 参数
+     */
+    public void debug(String format, char arg) {
+        if (logger.isDebugEnabled()) {
+            logger.debug(format, (Object) arg);
+        }
     }
 
-    // 合并
+    /**
+     * debug等级日志，小于info，等级打开时才装箱。byte、short、int、char都会变宽成long，
+     * char打出来的是字符的编码，要打字符请转成(Object)
+     *
+     * @param format 格式文本，{} 代表变量
+     * @param arg1 第一个参数
+     * @param arg2 第二个参数
+     */
+    public void debug(String format, long arg1, long arg2) {
+        if (logger.isDebugEnabled()) {
+            logger.debug(format, (Object) arg1, (Object) arg2);
+        }
+    }
+
+    /**
+     * info等级日志，小于warn，参数在等级打开时才计算
+     *
+     * @param format 格式文本，{} 代表变量
+     * @param arg 计算参数的Supplier
+     */
+    public void infoLazy(String format, Supplier<?> arg) {
+        if (logger.isInfoEnabled()) {
+            logger.info(format, arg.get());
+        }
+    }
+
+    /**
+     * info等级日志，小于warn，参数在等级打开时才计算
+     *
+     * @param format 格式文本，{} 代表变量
+     * @param arg1 计算第一个参数的Supplier
+     * @param arg2 计算第二个参数的Supplier
+     */
+    public void infoLazy(String format, Supplier<?> arg1, Supplier<?> arg2) {
+        if (logger.isInfoEnabled()) {
+            logger.info(format, arg1.get(), arg2.get());
+        }
+    }
+
+    /**
+     * info等级日志，小于warn，等级打开时才装箱
+     *
+     * @param format 格式文本，{} 代表变量
+     * @param arg 参数
+     */
+    public void info(String format, long arg) {
+        if (logger.isInfoEnabled()) {
+            logger.info(format, (Object) arg);
+        }
+    }
+
+    /**
+     * info等级日志，小于warn，等级打开时才装箱
+     *
+     * @param format 格式文本，{} 代表变量
+     * @param arg 参数
+     */
+    public void info(String format, int arg) {
+        if (logger.isInfoEnabled()) {
+            logger.info(format, (Object) arg);
+        }
+    }
+
+    /**
+     * info等级日志，小于warn，等级打开时才装箱。char单独一个重载，不然会变宽成int，打出来的是字符的编码
+     *
+     * @param format 格式文本，{} 代表变量
+     * @param arg 参数
+     */
+    public void info(String format, char arg) {
+        if (logger.isInfoEnabled()) {
+            logger.info(format, (Object) arg);
+        }
+    }
+
+    /**
+     * info等级日志，小于warn，等级打开时才装箱。byte、short、int、char都会变宽成long，
+     * char打出来的是字符的编码，要打字符请转成(Object)
+     *
+     * @param format 格式文本，{} 代表变量
+     * @param arg1 第一个参数
+     * @param arg2 第二个参数
+     */
+    public void info(String format, long arg1, long arg2) {
+        if (logger.isInfoEnabled()) {
+            logger.info(format, (Object) arg1, (Object) arg2);
+        }
+    }
+
+    /**
+     * warn等级日志，小于error，参数在等级打开时才计算
+     *
+     * @param format 格式文本，{} 代表变量
+     * @param arg 计算参数的Supplier
+     */
+    public void warnLazy(String format, Supplier<?> arg) {
+        if (logger.isWarnEnabled()) {
+            logger.warn(format, arg.get());
+        }
+    }
+
+    /**
+     * warn等级日志，小于error，参数在等级打开时才计算
+     *
+     * @param format 格式文本，{} 代表变量
+     * @param arg1 计算第一个参数的Supplier
+     * @param arg2 计算第二个参数的Supplier
+     */
+    public void warnLazy(String format, Supplier<?> arg1, Supplier<?> arg2) {
+        if (logger.isWarnEnabled()) {
+            logger.warn(format, arg1.get(), arg2.get());
+        }
+    }
+
+    /**
+     * warn等级日志，小于error，等级打开时才装箱
+     *
+     * @param format 格式文本，{} 代表变量
+     * @param arg 参数
+     */
+    public void warn(String format, long arg) {
+        if (logger.isWarnEnabled()) {
+            logger.warn(format, (Object) arg);
+        }
+    }
+
+    /**
+     * warn等级日志，小于error，等级打开时才装箱
+     *
+     * @param format 格式文本，{} 代表变量
+     * @param arg 参数
+     */
+    public void warn(String format, int arg) {
+        if (logger.isWarnEnabled()) {
+            logger.warn(format, (Object) arg);
+        }
+    }
+
+    /**
+     * warn等级日志，小于error，等级打开时才装箱。char单独一个重载，不然会变宽成int，打出来的是字符的编码
+     *
+     * @param format 格式文本，{} 代表变量
+     * @param arg 参数
+     */
+    public void warn(String format, char arg) {
+        if (logger.isWarnEnabled()) {
+            logger.warn(format, (Object) arg);
+        }
+    }
+
+    /**
+     * warn等级日志，小于error，等级打开时才装箱。byte、short、int、char都会变宽成long，
+     * char打出来的是字符的编码，要打字符请转成(Object)
+     *
+     * @param format 格式文本，{} 代表变量
+     * @param arg1 第一个参数
+     * @param arg2 第二个参数
+     */
+    public void warn(String format, long arg1, long arg2) {
+        if (logger.isWarnEnabled()) {
+            logger.warn(format, (Object) arg1, (Object) arg2);
+        }
+    }
+
+    /**
+     * error等级日志，参数在等级打开时才计算
+     *
+     * @param format 格式文本，{} 代表变量
+     * @param arg 计算参数的Supplier
+     */
+    public void errorLazy(String format, Supplier<?> arg) {
+        if (logger.isErrorEnabled()) {
+            logger.error(format, arg.get());
+        }
+    }
+
+    /**
+     * error等级日志，参数在等级打开时才计算
+     *
+     * @param format 格式文本，{} 代表变量
+     * @param arg1 计算第一个参数的Supplier
+     * @param arg2 计算第二个参数的Supplier
+     */
+    public void errorLazy(String format, Supplier<?> arg1, Supplier<?> arg2) {
+        if (logger.isErrorEnabled()) {
+            logger.error(format, arg1.get(), arg2.get());
+        }
+    }
+
+    /**
+     * error等级日志，等级打开时才装箱
+     *
+     * @param format 格式文本，{} 代表变量
+     * @param arg 参数
+     */
+    public void error(String format, long arg) {
+        if (logger.isErrorEnabled()) {
+            logger.error(format, (Object) arg);
+        }
+    }
+
+    /**
+     * error等级日志，等级打开时才装箱
+     *
+     * @param format 格式文本，{} 代表变量
+     * @param arg 参数
+     */
+    public void error(String format, int arg) {
+        if (logger.isErrorEnabled()) {
+            logger.error(format, (Object) arg);
+        }
+    }
+
+    /**
+     * error等级日志，等级打开时才装箱。char单独一个重载，不然会变宽成int，打出来的是字符的编码
+     *
+     * @param format 格式文本，{} 代表变量
+     * @param arg 参数
+     */
+    public void error(String format, char arg) {
+        if (logger.isErrorEnabled()) {
+            logger.error(format, (Object) arg);
+        }
+    }
+
+    /**
+     * error等级日志，等级打开时才装箱。byte、short、int、char都会变宽成long，
+     * char打出来的是字符的编码，要打字符请转成(Object)
+     *
+     * @param format 格式文本，{} 代表变量
+     * @param arg1 第一个参数
+     * @param arg2 第二个参数
+     */
+    public void error(String format, long arg1, long arg2) {
+        if (logger.isErrorEnabled()) {
+            logger.error(format, (Object) arg1, (Object) arg2);
+        }
+    }
+
+    // 合并，结果按(tag, format)缓存，同一条日志不用每次都拼一遍字符串
     private String merge(Tag tag, String format) {
         if (tag == null) {
             return format;
         }
 
-        return tag.toString() + separator + format;
+        MergeCache cache = mergeCache;
+        if (cache.separator != separator) {
+            // separator被改过，以前的缓存都作废
+            cache = new MergeCache(separator);
+            mergeCache = cache;
+        }
+        return cache.merge(tag, format);
+    }
+
+    /** 合并结果的缓存，所有Logger共用 */
+    private static volatile MergeCache mergeCache = new MergeCache(separator);
+
+    /** 最多缓存多少个tag */
+    static final int MAX_CACHED_TAGS = 1024;
+
+    /** 每个tag最多缓存多少个format，format一般是写死的常量，超过说明是拼出来的，就不缓存了 */
+    static final int MAX_CACHED_FORMATS = 256;
+
+    /**
+     * tag -> format -> 合并后的format。两层都有上限，满了以后直接拼接不再缓存，
+     * 所以动态拼出来的format不会把内存撑爆。
+     */
+    private static final class MergeCache {
+
+        final String separator;
+
+        private final ConcurrentHashMap<Tag, ConcurrentHashMap<String, String>> tags = new ConcurrentHashMap<>();
+
+        MergeCache(String separator) {
+            this.separator = separator;
+        }
+
+        String merge(Tag tag, String format) {
+            ConcurrentHashMap<String, String> formats = tags.get(tag);
+            if (formats == null) {
+                if (tags.size() >= MAX_CACHED_TAGS) {
+                    return concat(tag, format);
+                }
+                formats = tags.computeIfAbsent(tag, t -> new ConcurrentHashMap<>());
+            }
+            if (format == null) {
+                return concat(tag, format);
+            }
+            String merged = formats.get(format);
+            if (merged == null) {
+                merged = concat(tag, format);
+                if (formats.size() < MAX_CACHED_FORMATS) {
+                    String existing = formats.putIfAbsent(format, merged);
+                    if (existing != null) {
+                        merged = existing;
+                    }
+                }
+            }
+            return merged;
+        }
+
+        private String concat(Tag tag, String format) {
+            return tag.toString() + separator + format;
+        }
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,384 @@
+import java.util.Arrays;
+
+
+/**
+ * Variant of {@link DefaultCache} for caches keyed by <tt>long</tt> ids, such
+ * as user or order ids, that never boxes a key and allocates nothing per
+ * entry. Entries live in slots of parallel arrays: the key, the value, the
+ * links of the accessed list and, if entries can expire, the links of the age
+ * list and the time the entry was added. Both lists link slot indexes instead
+ * of node objects. Keys are found through an open addressing hash table of
+ * slot indexes with linear probing.<p>
+ *
+ * An entry costs about 28 bytes (key, value reference, two list links and its
+ * share of the hash table), plus 16 bytes if the cache has a maximum lifetime.
+ * The cache is bounded by number of entries rather than bytes; when it is
+ * full, the least recently used entry makes room for the new one.
+ * @param <V> <V>
+ */
+public class LongKeyDefaultCache<V> {
+
+    /**
+     * Index of the slot used as head sentinel of both lists.
+     */
+    private final int head;
+
+    /**
+     * Slot index plus one of every key, 0 for an empty bucket.
+     */
+    private final int[] table;
+
+    private final int tableMask;
+
+    private final long[] keys;
+
+    private final Object[] values;
+
+    /**
+     * Accessed list, most used to least used. The next links of unused slots
+     * form the free list.
+     */
+    private final int[] accessPrevious;
+    private final int[] accessNext;
+
+    /**
+     * Age list, most recently added to oldest added. Null if entries never expire.
+     */
+    private final int[] agePrevious;
+    private final int[] ageNext;
+
+    /**
+     * Time each entry was added. Null if entries never expire.
+     */
+    private final long[] timestamps;
+
+    /**
+     * Head of the list of freed slots, -1 if empty.
+     */
+    private int freeSlot = -1;
+
+    /**
+     * Number of slots handed out so far that were never freed.
+     */
+    private int usedSlots;
+
+    /**
+     * Number of entries in the cache.
+     */
+    private int size;
+
+    /**
+     * Maximum number of entries the cache can hold.
+     */
+    private final int maxEntries;
+
+    /**
+     * Maximum length of time objects can exist in cache before expiring.
+     */
+    private final long maxLifetime;
+
+    /**
+     * 记录缓存命中次数
+     */
+    private long cacheHits;
+
+    /**
+     * 记录缓存不中次数
+     */
+    private long cacheMisses;
+
+    /**
+     * The name of the cache.
+     */
+    private String name;
+
+    /**
+     * @param name a name for the cache.
+     * @param maxEntries the maximum number of entries in the cache.
+     * @param maxLifetime the maximum amount of time objects can exist in
+     *      cache before being deleted. -1 means objects never expire.
+     */
+    public LongKeyDefaultCache(String name, int maxEntries, long maxLifetime) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        }
+        this.name = name;
+        this.maxEntries = maxEntries;
+        this.maxLifetime = maxLifetime;
+        this.head = maxEntries;
+
+        // Keep the load factor of the hash table at 75% or less.
+        int tableSize = 2;
+        while (tableSize * 3L < maxEntries * 4L) {
+            tableSize <<= 1;
+        }
+        table = new int[tableSize];
+        tableMask = tableSize - 1;
+
+        keys = new long[maxEntries];
+        values = new Object[maxEntries];
+        accessPrevious = new int[maxEntries + 1];
+        accessNext = new int[maxEntries + 1];
+        accessPrevious[head] = accessNext[head] = head;
+        if (maxLifetime > 0) {
+            agePrevious = new int[maxEntries + 1];
+            ageNext = new int[maxEntries + 1];
+            agePrevious[head] = ageNext[head] = head;
+            timestamps = new long[maxEntries];
+        } else {
+            agePrevious = ageNext = null;
+            timestamps = null;
+        }
+    }
+
+    /**
+     * Returns the value of the key and marks it as most recently used.
+     *
+     * @param key key
+     * @return the value, or null if the key is not in the cache.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized V get(long key) {
+        deleteExpiredEntries();
+
+        int bucket = find(key);
+        if (bucket < 0) {
+            cacheMisses++;
+            return null;
+        }
+        cacheHits++;
+        int slot = table[bucket] - 1;
+        unlink(accessPrevious, accessNext, slot);
+        linkFirst(accessPrevious, accessNext, slot);
+        return (V) values[slot];
+    }
+
+    /**
+     * Adds or replaces the value of a key. If the cache is full, the least
+     * recently used entry is evicted.
+     *
+     * @param key key
+     * @param value value
+     * @return the previous value of the key, or null.
+     */
+    public synchronized V put(long key, V value) {
+        V answer = remove(key);
+        deleteExpiredEntries();
+        if (size == maxEntries) {
+            remove(keys[accessPrevious[head]]);
+        }
+
+        int slot = allocateSlot();
+        keys[slot] = key;
+        values[slot] = value;
+        linkFirst(accessPrevious, accessNext, slot);
+        if (timestamps != null) {
+            linkFirst(agePrevious, ageNext, slot);
+            timestamps[slot] = System.currentTimeMillis();
+        }
+        int bucket = spread(key) & tableMask;
+        while (table[bucket] != 0) {
+            bucket = (bucket + 1) & tableMask;
+        }
+        table[bucket] = slot + 1;
+        size++;
+        return answer;
+    }
+
+    /**
+     * Removes a key from the cache.
+     *
+     * @param key key
+     * @return the value of the key, or null if it was not in the cache.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized V remove(long key) {
+        int bucket = find(key);
+        if (bucket < 0) {
+            return null;
+        }
+        int slot = table[bucket] - 1;
+        deleteBucket(bucket);
+        unlink(accessPrevious, accessNext, slot);
+        if (timestamps != null) {
+            unlink(agePrevious, ageNext, slot);
+        }
+        V value = (V) values[slot];
+        values[slot] = null;
+        // Push the slot onto the free list.
+        accessNext[slot] = freeSlot;
+        freeSlot = slot;
+        size--;
+        return value;
+    }
+
+    /**
+     * @param key key
+     * @return true if the key is in the cache.
+     */
+    public synchronized boolean containsKey(long key) {
+        deleteExpiredEntries();
+        return find(key) >= 0;
+    }
+
+    /**
+     * @return the number of entries in the cache.
+     */
+    public synchronized int size() {
+        deleteExpiredEntries();
+        return size;
+    }
+
+    /**
+     * @return true if the cache is empty.
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Removes every entry and resets the hit and miss counters.
+     */
+    public synchronized void clear() {
+        Arrays.fill(table, 0);
+        Arrays.fill(values, null);
+        accessPrevious[head] = accessNext[head] = head;
+        if (timestamps != null) {
+            agePrevious[head] = ageNext[head] = head;
+        }
+        freeSlot = -1;
+        usedSlots = 0;
+        size = 0;
+        cacheHits = 0;
+        cacheMisses = 0;
+    }
+
+    /**
+     * Returns the name of this cache.
+     *
+     * @return the name of this cache.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Sets the name of this cache.
+     *
+     * @param name the name of this cache.
+     */
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the number of cache hits.
+     */
+    public synchronized long getCacheHits() {
+        return cacheHits;
+    }
+
+    /**
+     * @return the number of cache misses.
+     */
+    public synchronized long getCacheMisses() {
+        return cacheMisses;
+    }
+
+    /**
+     * @return the maximum number of entries in the cache.
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * @return the maximum number of milleseconds before objects are expired.
+     */
+    public long getMaxLifetime() {
+        return maxLifetime;
+    }
+
+    /**
+     * Removes entries from the end of the age list until they are no longer
+     * too old.
+     */
+    protected void deleteExpiredEntries() {
+        if (timestamps == null) {
+            return;
+        }
+        long expireTime = System.currentTimeMillis() - maxLifetime;
+        int slot = agePrevious[head];
+        while (slot != head && expireTime > timestamps[slot]) {
+            remove(keys[slot]);
+            slot = agePrevious[head];
+        }
+    }
+
+    /**
+     * Returns the hash table bucket of the key, or -1 if it is not in the cache.
+     */
+    private int find(long key) {
+        int bucket = spread(key) & tableMask;
+        int slot;
+        while ((slot = table[bucket]) != 0) {
+            if (keys[slot - 1] == key) {
+                return bucket;
+            }
+            bucket = (bucket + 1) & tableMask;
+        }
+        return -1;
+    }
+
+    /**
+     * Empties a bucket, shifting later entries of the same probe sequence back
+     * so that lookups never stop at the hole too early.
+     */
+    private void deleteBucket(int bucket) {
+        int hole = bucket;
+        int next = bucket;
+        table[hole] = 0;
+        while (true) {
+            next = (next + 1) & tableMask;
+            int slot = table[next];
+            if (slot == 0) {
+                return;
+            }
+            int home = spread(keys[slot - 1]) & tableMask;
+            // Leave the entry alone if its home lies cyclically in (hole, next].
+            boolean stays = hole <= next ? hole < home && home <= next : hole < home || home <= next;
+            if (!stays) {
+                table[hole] = slot;
+                table[next] = 0;
+                hole = next;
+            }
+        }
+    }
+
+    private int allocateSlot() {
+        if (freeSlot >= 0) {
+            int slot = freeSlot;
+            freeSlot = accessNext[slot];
+            return slot;
+        }
+        return usedSlots++;
+    }
+
+    private void linkFirst(int[] previous, int[] next, int slot) {
+        int first = next[head];
+        next[slot] = first;
+        previous[slot] = head;
+        previous[first] = slot;
+        next[head] = slot;
+    }
+
+    private static void unlink(int[] previous, int[] next, int slot) {
+        next[previous[slot]] = next[slot];
+        previous[next[slot]] = previous[slot];
+    }
+
+    private static int spread(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
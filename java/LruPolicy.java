@@ -0,0 +1,37 @@
+/**
+ * Least recently used eviction. This is the order {@link DefaultCache} keeps
+ * in its accessed list anyway; the class exists so LRU can be compared with
+ * the other policies, for example by the {@link PolicySimulator}.
+ * @param <K> <K>
+ */
+public class LruPolicy<K> implements EvictionPolicy<K> {
+
+    /**
+     * Entries from most to least recently used.
+     */
+    private LinkedList<K> list = new LinkedList<>();
+
+    public Object recordInsert(K key) {
+        return list.addFirst(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void recordAccess(Object handle) {
+        LinkedListNode<K> node = (LinkedListNode<K>) handle;
+        node.remove();
+        list.addFirst(node);
+    }
+
+    public void recordRemoval(Object handle) {
+        ((LinkedListNode<?>) handle).remove();
+    }
+
+    public K victim() {
+        LinkedListNode<K> node = list.getLast();
+        return node == null ? null : node.object;
+    }
+
+    public void clear() {
+        list = new LinkedList<>();
+    }
+}
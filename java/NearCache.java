@@ -0,0 +1,231 @@
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+
+/**
+ * Two tier cache: a local {@link DefaultCache} in front of a shared remote
+ * store such as Redis. Lookups are answered from the local tier; only a miss
+ * goes to the remote store, and concurrent misses on the same key share one
+ * remote round-trip. Keys the remote store does not know are cached as well,
+ * as <tt>Optional.empty()</tt> with a lifetime of their own, so looking up a
+ * missing key repeatedly does not hit the store every time.<p>
+ *
+ * When a value changes in the remote store, call {@link #invalidate(Object)}:
+ * the key is dropped locally and published on the {@link InvalidationChannel},
+ * so every other near cache subscribed to it drops its copy as well. An
+ * invalidation that arrives while a remote lookup of the same key is in
+ * flight also drops the value that lookup installs, since it may have been
+ * read before the change.
+ * @param <K> <K>
+ * @param <V> <V>
+ */
+public class NearCache<K, V> {
+
+    /**
+     * Local copies of the remote values. Absent values are kept as
+     * <tt>Optional.empty()</tt>.
+     */
+    private final DefaultCache<K, Optional<V>> local;
+
+    /**
+     * Looks a key up in the remote store, returning null if it is not there.
+     */
+    private final Function<? super K, ? extends V> remote;
+
+    private final InvalidationChannel<K> channel;
+
+    /**
+     * Lifetime of a cached miss in milliseconds.
+     */
+    private final long negativeLifetime;
+
+    /**
+     * Number of version stripes, a power of two.
+     */
+    private static final int STRIPES = 64;
+
+    /**
+     * Invalidation counters, one per stripe of keys. A remote lookup whose
+     * stripe moved while it was in flight must not be kept.
+     */
+    private final AtomicLongArray versions = new AtomicLongArray(STRIPES);
+
+    /**
+     * @param name a name for the cache.
+     * @param maxEntries the maximum number of keys kept locally.
+     * @param maxLifetime the maximum amount of time a local copy is used
+     *      before it is fetched again. -1 means copies only go away when they
+     *      are invalidated or evicted.
+     * @param negativeLifetime the time in milliseconds a key missing from the
+     *      remote store is remembered as missing, -1 to use the maximum lifetime.
+     * @param remote looks a key up in the remote store and returns null if it
+     *      is not there.
+     * @param channel carries invalidations between the near caches of all processes.
+     */
+    public NearCache(String name, long maxEntries, long maxLifetime, long negativeLifetime,
+            Function<? super K, ? extends V> remote, InvalidationChannel<K> channel) {
+        this.local = new DefaultCache<>(name, maxEntries, maxLifetime, (key, value) -> 1);
+        this.remote = remote;
+        this.channel = channel;
+        this.negativeLifetime = negativeLifetime;
+        channel.subscribe(this::evictLocal);
+    }
+
+    /**
+     * Returns the value of a key, from the local tier if possible and from
+     * the remote store otherwise.
+     *
+     * @param key key
+     * @return the value, or <tt>Optional.empty()</tt> if the remote store does
+     *      not have it.
+     */
+    public Optional<V> get(K key) {
+        // A loader returning null is not cached, so misses are put here with
+        // their own lifetime.
+        long[] loadedAt = { -1 };
+        Optional<V> loaded = local.get(key, k -> {
+            loadedAt[0] = versions.get(stripe(k));
+            V result = remote.apply(k);
+            if (result == null) {
+                local.put(k, Optional.empty(), negativeLifetime);
+                return null;
+            }
+            return Optional.of(result);
+        });
+        if (loadedAt[0] != -1 && versions.get(stripe(key)) != loadedAt[0]) {
+            // Invalidated while the lookup was in flight, the value it just
+            // installed may be older than the change.
+            local.remove(key);
+        }
+        return loaded == null ? Optional.empty() : loaded;
+    }
+
+    /**
+     * Returns the invalidation counters as they are now. Take the stamp
+     * before reading values in bulk and pass it to
+     * {@link #preload(Map, long, long[])}, so keys invalidated while the
+     * values were read are not filled with what was read before the change.
+     *
+     * @return the invalidation stamp.
+     */
+    public long[] invalidationStamp() {
+        long[] stamp = new long[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            stamp[i] = versions.get(i);
+        }
+        return stamp;
+    }
+
+    /**
+     * Fills the local tier with values fetched in bulk, e.g. at startup or
+     * from a local snapshot, so the first lookups of these keys do not go to
+     * the remote store. A value is kept for what remains of the maximum
+     * lifetime counted from the time it was read, not from now. Keys whose
+     * stripe was invalidated after the stamp was taken are skipped, and at
+     * most as many values as the local tier holds are loaded, since more
+     * would only evict each other.
+     *
+     * @param values the values to keep locally.
+     * @param loadedAt the time the values were read from the remote store.
+     * @param stamp the result of {@link #invalidationStamp()} taken before
+     *      the values were read.
+     * @return the number of values kept.
+     */
+    public int preload(Map<? extends K, ? extends V> values, long loadedAt, long[] stamp) {
+        long maxLifetime = local.getMaxLifetime();
+        long ttl = -1;
+        if (maxLifetime > 0) {
+            ttl = loadedAt + maxLifetime - System.currentTimeMillis();
+            if (ttl <= 0) {
+                return 0;
+            }
+        }
+        long maxEntries = local.getMaxCacheSize();
+        int count = 0;
+        for (Map.Entry<? extends K, ? extends V> entry : values.entrySet()) {
+            if (maxEntries > 0 && count >= maxEntries) {
+                break;
+            }
+            K key = entry.getKey();
+            if (entry.getValue() == null || versions.get(stripe(key)) != stamp[stripe(key)]) {
+                continue;
+            }
+            local.put(key, Optional.of(entry.getValue()), ttl);
+            // Checked again after the put, like a lookup: an invalidation
+            // between the check and the put has already run its remove.
+            if (versions.get(stripe(key)) != stamp[stripe(key)]) {
+                local.remove(key);
+                continue;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Drops the local copy of a key in this and every other near cache on
+     * the channel. Call this after changing the value in the remote store.
+     *
+     * @param key key
+     */
+    public void invalidate(K key) {
+        local.remove(key);
+        channel.publish(key);
+    }
+
+    /**
+     * Drops every local copy in this and every other near cache on the channel.
+     */
+    public void invalidateAll() {
+        local.clear();
+        channel.publish(null);
+    }
+
+    /**
+     * Handles an invalidation published by any near cache, this one included.
+     */
+    private void evictLocal(K key) {
+        // Bump the version before removing, a lookup that read the remote
+        // store earlier then drops what it installs.
+        if (key == null) {
+            for (int i = 0; i < STRIPES; i++) {
+                versions.incrementAndGet(i);
+            }
+            local.clear();
+        } else {
+            versions.incrementAndGet(stripe(key));
+            local.remove(key);
+        }
+    }
+
+    private static int stripe(Object key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    /**
+     * @return the name of this cache.
+     */
+    public String getName() {
+        return local.getName();
+    }
+
+    /**
+     * @return the number of keys kept locally, including cached misses.
+     */
+    public int size() {
+        return local.size();
+    }
+
+    /**
+     * Returns the statistics of the local tier. Every miss counted there
+     * became a remote lookup, unless it joined one already in progress.
+     *
+     * @return a snapshot of the statistics of the local tier.
+     */
+    public CacheStats stats() {
+        return local.stats();
+    }
+}
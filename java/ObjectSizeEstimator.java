@@ -0,0 +1,364 @@
+import java.lang.instrument.Instrumentation;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Estimates the memory an object graph takes on the heap. The layout of each
+ * class (its shallow size and the reference fields to follow) is worked out
+ * by reflection once and cached, so sizing an object afterwards is a walk
+ * over its references without any further reflection setup. Shallow sizes
+ * follow the HotSpot layout: a 12 or 16 byte object header depending on
+ * compressed class pointers, 4 or 8 byte references depending on compressed
+ * oops, and everything rounded up to 8 bytes.<p>
+ *
+ * If the JVM was started with this class as a Java agent
+ * (<tt>-javaagent</tt> with <tt>Premain-Class: ObjectSizeEstimator</tt>),
+ * shallow sizes come from {@link Instrumentation#getObjectSize(Object)}
+ * instead.<p>
+ *
+ * Objects reachable over several paths, including cycles, are counted once.
+ * The walk stops at a configurable depth.<p>
+ *
+ * On Java 9 and later the fields of JDK classes can only be read if their
+ * module is opened (<tt>--add-opens</tt>). Without that, a String is sized
+ * from its length, and a JDK collection or map is walked through its public
+ * API: its elements, keys and values are measured, and its internal table
+ * and nodes are estimated from its size as for a HashMap or an ArrayList.
+ * References held in other inaccessible JDK internals are not counted.
+ */
+public class ObjectSizeEstimator {
+
+    /**
+     * Depth used when none is specified.
+     */
+    public static final int DEFAULT_MAX_DEPTH = 16;
+
+    /**
+     * Set when the class is loaded as a Java agent.
+     */
+    private static volatile Instrumentation instrumentation;
+
+    /**
+     * Size of a reference field.
+     */
+    static final int REFERENCE_SIZE;
+
+    /**
+     * Size of the header of a plain object.
+     */
+    static final int OBJECT_HEADER;
+
+    /**
+     * Size of the header of an array, including the length.
+     */
+    static final int ARRAY_HEADER;
+
+    static {
+        boolean is64Bit = "64".equals(System.getProperty("sun.arch.data.model"))
+                || System.getProperty("os.arch", "").contains("64");
+        boolean compressedOops = is64Bit && vmOption("UseCompressedOops", true);
+        boolean compressedClassPointers = is64Bit && vmOption("UseCompressedClassPointers", compressedOops);
+        REFERENCE_SIZE = is64Bit && !compressedOops ? 8 : 4;
+        OBJECT_HEADER = !is64Bit ? 8 : compressedClassPointers ? 12 : 16;
+        ARRAY_HEADER = align(OBJECT_HEADER + 4);
+    }
+
+    /**
+     * Layout of every class seen so far.
+     */
+    /**
+     * Whether Strings store Latin-1 text in one byte per character, as on
+     * Java 9 and later.
+     */
+    private static final boolean COMPACT_STRINGS = hasField(String.class, "coder");
+
+    private static final ClassValue<Layout> LAYOUTS = new ClassValue<Layout>() {
+        @Override
+        protected Layout computeValue(Class<?> type) {
+            return Layout.of(type);
+        }
+    };
+
+    private final int maxDepth;
+
+    /**
+     * @param maxDepth how many references deep to follow from the root object.
+     *      0 only measures the root itself.
+     */
+    public ObjectSizeEstimator(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Agent entry point, see the class documentation.
+     *
+     * @param args ignored.
+     * @param inst the instrumentation of the JVM.
+     */
+    public static void premain(String args, Instrumentation inst) {
+        instrumentation = inst;
+    }
+
+    /**
+     * Agent entry point when attached to a running JVM.
+     *
+     * @param args ignored.
+     * @param inst the instrumentation of the JVM.
+     */
+    public static void agentmain(String args, Instrumentation inst) {
+        instrumentation = inst;
+    }
+
+    /**
+     * Returns the size in bytes of the object and everything it references,
+     * up to the maximum depth.
+     *
+     * @param root the object to measure.
+     * @return the estimated size in bytes.
+     */
+    public long sizeOf(Object root) {
+        if (root == null) {
+            return 0;
+        }
+        Map<Object, Boolean> visited = new IdentityHashMap<>();
+        Deque<Object> stack = new ArrayDeque<>();
+        Deque<Integer> depths = new ArrayDeque<>();
+        stack.push(root);
+        depths.push(0);
+        visited.put(root, Boolean.TRUE);
+        long size = 0;
+        while (!stack.isEmpty()) {
+            Object object = stack.pop();
+            int depth = depths.pop();
+            Class<?> type = object.getClass();
+            size += shallowSizeOf(object, type);
+            if (depth == maxDepth) {
+                continue;
+            }
+            if (type.isArray()) {
+                if (type.getComponentType().isPrimitive()) {
+                    continue;
+                }
+                for (Object element : (Object[]) object) {
+                    if (element != null && visited.put(element, Boolean.TRUE) == null) {
+                        stack.push(element);
+                        depths.push(depth + 1);
+                    }
+                }
+                continue;
+            }
+            Layout layout = LAYOUTS.get(type);
+            if (layout.opaque) {
+                if (object instanceof String) {
+                    size += sizeOfChars((String) object);
+                    continue;
+                }
+                if (object instanceof Map) {
+                    size += walkMap((Map<?, ?>) object, depth, visited, stack, depths);
+                    continue;
+                }
+                if (object instanceof Collection) {
+                    size += walkCollection((Collection<?>) object, depth, visited, stack, depths);
+                    continue;
+                }
+            }
+            for (Field field : layout.references) {
+                Object value;
+                try {
+                    value = field.get(object);
+                } catch (IllegalAccessException e) {
+                    continue;
+                }
+                if (value != null && visited.put(value, Boolean.TRUE) == null) {
+                    stack.push(value);
+                    depths.push(depth + 1);
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the size of the array holding the characters of a String whose
+     * fields cannot be read.
+     */
+    private static long sizeOfChars(String string) {
+        int length = string.length();
+        if (COMPACT_STRINGS) {
+            for (int i = 0; i < length; i++) {
+                if (string.charAt(i) > 0xFF) {
+                    return align(ARRAY_HEADER + 2L * length);
+                }
+            }
+            return align(ARRAY_HEADER + (long) length);
+        }
+        return align(ARRAY_HEADER + 2L * length);
+    }
+
+    /**
+     * Queues the keys and values of a map whose fields cannot be read, and
+     * returns the estimated size of its table and entries, laid out like a
+     * HashMap.
+     */
+    private static long walkMap(Map<?, ?> map, int depth, Map<Object, Boolean> visited,
+            Deque<Object> stack, Deque<Integer> depths) {
+        int entries = 0;
+        try {
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                push(entry.getKey(), depth + 1, visited, stack, depths);
+                push(entry.getValue(), depth + 1, visited, stack, depths);
+                entries++;
+            }
+        } catch (RuntimeException e) {
+            // Modified while walking it; count what was seen.
+        }
+        int table = 1;
+        while (table * 3L < entries * 4L) {
+            table <<= 1;
+        }
+        return align(ARRAY_HEADER + (long) table * REFERENCE_SIZE)
+                + entries * align(OBJECT_HEADER + 4L + 3L * REFERENCE_SIZE);
+    }
+
+    /**
+     * Queues the elements of a collection whose fields cannot be read, and
+     * returns the estimated size of its backing array, laid out like an
+     * ArrayList.
+     */
+    private static long walkCollection(Collection<?> collection, int depth, Map<Object, Boolean> visited,
+            Deque<Object> stack, Deque<Integer> depths) {
+        int elements = 0;
+        try {
+            for (Object element : collection) {
+                push(element, depth + 1, visited, stack, depths);
+                elements++;
+            }
+        } catch (RuntimeException e) {
+            // Modified while walking it; count what was seen.
+        }
+        return align(ARRAY_HEADER + (long) elements * REFERENCE_SIZE);
+    }
+
+    private static void push(Object value, int depth, Map<Object, Boolean> visited,
+            Deque<Object> stack, Deque<Integer> depths) {
+        if (value != null && visited.put(value, Boolean.TRUE) == null) {
+            stack.push(value);
+            depths.push(depth);
+        }
+    }
+
+    /**
+     * Returns the size of the object itself, without anything it references.
+     */
+    private static long shallowSizeOf(Object object, Class<?> type) {
+        Instrumentation inst = instrumentation;
+        if (inst != null) {
+            return inst.getObjectSize(object);
+        }
+        if (type.isArray()) {
+            Class<?> component = type.getComponentType();
+            int elementSize = component.isPrimitive() ? primitiveSize(component) : REFERENCE_SIZE;
+            return align(ARRAY_HEADER + (long) Array.getLength(object) * elementSize);
+        }
+        return LAYOUTS.get(type).shallowSize;
+    }
+
+    static int primitiveSize(Class<?> type) {
+        return type == boolean.class || type == byte.class ? 1 : type == char.class || type == short.class ? 2
+                : type == int.class || type == float.class ? 4 : 8;
+    }
+
+    static int align(int size) {
+        return (size + 7) & ~7;
+    }
+
+    static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    private static boolean hasField(Class<?> type, String name) {
+        try {
+            type.getDeclaredField(name);
+            return true;
+        } catch (NoSuchFieldException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads a boolean flag of the HotSpot VM, falling back to a default on
+     * other VMs.
+     */
+    private static boolean vmOption(String name, boolean defaultValue) {
+        try {
+            com.sun.management.HotSpotDiagnosticMXBean bean =
+                    ManagementFactory.getPlatformMXBean(com.sun.management.HotSpotDiagnosticMXBean.class);
+            return Boolean.parseBoolean(bean.getVMOption(name).getValue());
+        } catch (Throwable e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Shallow size and reference fields of a class.
+     */
+    private static final class Layout {
+
+        final long shallowSize;
+
+        /**
+         * Reference fields of the class and its super classes that could be
+         * made accessible. Inaccessible ones still count toward the shallow
+         * size, but are not followed.
+         */
+        final Field[] references;
+
+        /**
+         * Whether some reference field could not be made accessible.
+         */
+        final boolean opaque;
+
+        private Layout(long shallowSize, Field[] references, boolean opaque) {
+            this.shallowSize = shallowSize;
+            this.references = references;
+            this.opaque = opaque;
+        }
+
+        static Layout of(Class<?> type) {
+            long size = OBJECT_HEADER;
+            List<Field> references = new ArrayList<>();
+            boolean opaque = false;
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+                    Class<?> fieldType = field.getType();
+                    if (fieldType.isPrimitive()) {
+                        size += primitiveSize(fieldType);
+                        continue;
+                    }
+                    size += REFERENCE_SIZE;
+                    try {
+                        field.setAccessible(true);
+                        references.add(field);
+                    } catch (RuntimeException e) {
+                        // Not opened to us by the module system.
+                        opaque = true;
+                    }
+                }
+            }
+            return new Layout(align(size), references.toArray(new Field[0]), opaque);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * {@link DefaultCache} whose values are kept outside the Java heap, in an
+ * {@link OffHeapStore}. Values are turned into bytes by a {@link ValueCodec}
+ * when they are added and decoded again on every read, so large caches of
+ * serialized payloads no longer fill up the old generation. The underlying
+ * DefaultCache only keeps a small handle per entry, and its cache size is the
+ * number of off-heap bytes the values really occupy.<p>
+ *
+ * Every operation holds the lock of the underlying cache while it touches the
+ * store, so a value is never read after its slot was freed.
+ * @param <K> <K>
+ * @param <V> <V>
+ */
+public class OffHeapCache<K, V> implements Map<K, V> {
+
+    /**
+     * Keeps the keys, access order and expiry of the entries.
+     */
+    private final HandleCache cache;
+
+    /**
+     * Keeps the bytes of the values.
+     */
+    private final OffHeapStore store;
+
+    private final ValueCodec<V> codec;
+
+    /**
+     * @param name a name for the cache.
+     * @param maxSize the maximum number of off-heap bytes the values may occupy.
+     * @param maxLifetime the maximum amount of time objects can exist in
+     *      cache before being deleted. -1 means objects never expire.
+     * @param codec turns values into bytes and back.
+     */
+    public OffHeapCache(String name, long maxSize, long maxLifetime, ValueCodec<V> codec) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("An off-heap cache needs a max size: " + maxSize);
+        }
+        // Small caches get smaller chunks, so they can hold more than one slab class.
+        int chunkSize = (int) Math.min(OffHeapStore.DEFAULT_CHUNK_SIZE, Math.max(64, Long.highestOneBit(maxSize / 16)));
+        this.store = new OffHeapStore(maxSize, chunkSize);
+        this.cache = new HandleCache(name, maxSize, maxLifetime);
+        this.codec = codec;
+    }
+
+    /**
+     * @see Map#put(Object, Object)
+     * @param key key
+     * @param value value
+     * @return V
+     */
+    public V put(K key, V value) {
+        byte[] bytes = codec.encode(value);
+        synchronized (cache) {
+            V answer = decode(cache.peek(key));
+            cache.remove(key);
+            OffHeapStore.Handle handle = store.allocate(bytes.length);
+            // The store can run out of slots of the right size before the
+            // cache is full, make room the same way the cache would.
+            while (handle == null && cache.evictLeastRecentlyUsed()) {
+                handle = store.allocate(bytes.length);
+            }
+            if (handle == null) {
+                System.out.println("Cache: " + cache.getName() + " -- object with key " + key +
+                        " does not fit in the off-heap store. Size is " + bytes.length);
+                return answer;
+            }
+            store.write(handle, bytes);
+            cache.put(key, handle);
+            if (cache.peek(key) != handle) {
+                // Too large for the cache, it was not added.
+                store.free(handle);
+            }
+            return answer;
+        }
+    }
+
+    /**
+     * @see Map#get(Object)
+     * @param key key
+     * @return V
+     */
+    public V get(Object key) {
+        synchronized (cache) {
+            return decode(cache.get(key));
+        }
+    }
+
+    /**
+     * @see Map#remove(Object)
+     * @param key key
+     * @return V
+     */
+    public V remove(Object key) {
+        synchronized (cache) {
+            V answer = decode(cache.peek(key));
+            cache.remove(key);
+            return answer;
+        }
+    }
+
+    /**
+     * @see Map#clear()
+     */
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+            store.clear();
+        }
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public boolean isEmpty() {
+        return cache.isEmpty();
+    }
+
+    public boolean containsKey(Object key) {
+        return cache.containsKey(key);
+    }
+
+    public boolean containsValue(Object value) {
+        return values().contains(value);
+    }
+
+    public void putAll(Map<? extends K, ? extends V> map) {
+        for (Entry<? extends K, ? extends V> entry : map.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Decodes every value. Expensive on large caches.
+     * @return Collection<V>
+     */
+    public Collection<V> values() {
+        synchronized (cache) {
+            Collection<V> values = new ArrayList<>();
+            for (OffHeapStore.Handle handle : cache.values()) {
+                values.add(decode(handle));
+            }
+            return values;
+        }
+    }
+
+    public Set<K> keySet() {
+        return cache.keySet();
+    }
+
+    /**
+     * Decodes every value. Expensive on large caches.
+     * @return Set
+     */
+    public Set<Entry<K, V>> entrySet() {
+        synchronized (cache) {
+            Map<K, V> result = new HashMap<>();
+            for (Entry<K, OffHeapStore.Handle> entry : cache.entrySet()) {
+                result.put(entry.getKey(), decode(entry.getValue()));
+            }
+            return result.entrySet();
+        }
+    }
+
+    /**
+     * @return the name of this cache.
+     */
+    public String getName() {
+        return cache.getName();
+    }
+
+    /**
+     * @return the number of cache hits.
+     */
+    public long getCacheHits() {
+        return cache.getCacheHits();
+    }
+
+    /**
+     * @return the number of cache misses.
+     */
+    public long getCacheMisses() {
+        return cache.getCacheMisses();
+    }
+
+    /**
+     * @return a snapshot of the statistics of the cache.
+     * @see DefaultCache#stats()
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * Returns the number of off-heap bytes occupied by the values, including
+     * the rounding up to the slab size.
+     *
+     * @return the size of the cache contents in bytes.
+     */
+    public int getCacheSize() {
+        return cache.getCacheSize();
+    }
+
+    /**
+     * @return the maximum number of off-heap bytes the values may occupy.
+     */
+    public long getMaxCacheSize() {
+        return cache.getMaxCacheSize();
+    }
+
+    /**
+     * @return the maximum number of milleseconds before objects are expired.
+     */
+    public long getMaxLifetime() {
+        return cache.getMaxLifetime();
+    }
+
+    /**
+     * @param maxLifetime the maximum number of milleseconds before objects are expired.
+     */
+    public void setMaxLifetime(long maxLifetime) {
+        cache.setMaxLifetime(maxLifetime);
+    }
+
+    private V decode(OffHeapStore.Handle handle) {
+        return handle == null ? null : codec.decode(store.read(handle));
+    }
+
+    /**
+     * DefaultCache of handles that frees the slot of every entry it drops,
+     * whether it was removed, replaced, evicted or expired.
+     */
+    private final class HandleCache extends DefaultCache<K, OffHeapStore.Handle> {
+
+        HandleCache(String name, long maxSize, long maxLifetime) {
+            super(name, maxSize, maxLifetime);
+        }
+
+        @Override
+        protected int sizeOf(K key, OffHeapStore.Handle handle) {
+            return handle.getSlabSize();
+        }
+
+        @Override
+        protected synchronized OffHeapStore.Handle removeEntry(Object key, RemovalCause cause) {
+            OffHeapStore.Handle handle = super.removeEntry(key, cause);
+            if (handle != null) {
+                store.free(handle);
+            }
+            return handle;
+        }
+
+        /**
+         * Evicts the least recently used entry.
+         *
+         * @return false if the cache was empty.
+         */
+        synchronized boolean evictLeastRecentlyUsed() {
+            LinkedListNode<K> node = lastAccessedList.getLast();
+            if (node == null) {
+                return false;
+            }
+            removeEntry(node.object, RemovalCause.SIZE);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,313 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Slab allocator for values kept outside the Java heap. Memory is taken from
+ * the operating system in chunks of direct {@link ByteBuffer}s. Each chunk is
+ * dedicated to one slab class and cut into slots of that size; slab classes
+ * are the powers of two from 64 bytes up to the chunk size. A value is stored
+ * in a slot of the smallest class it fits in, and freed slots are reused by
+ * values of the same class, so the store never fragments beyond the rounding
+ * to a power of two. When the store is full, chunks whose slots are all free
+ * are taken back from their slab class and handed to the class that needs
+ * one.<p>
+ *
+ * The Java heap only holds a small {@link Handle} per value.
+ */
+public class OffHeapStore {
+
+    /**
+     * Size of the smallest slab class as a power of two.
+     */
+    private static final int MIN_SLAB_SHIFT = 6;
+
+    /**
+     * Default size of a chunk, which is also the largest value the store takes.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+    private final int chunkSize;
+
+    /**
+     * Maximum number of bytes the store takes from the operating system.
+     */
+    private final long capacity;
+
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+
+    /**
+     * Maximum number of chunks, derived from the capacity.
+     */
+    private final int maxChunks;
+
+    /**
+     * Slab class each chunk is dedicated to, -1 for spare chunks.
+     */
+    private final int[] chunkClass;
+
+    /**
+     * Number of slots handed out per chunk.
+     */
+    private final int[] chunkLive;
+
+    /**
+     * Chunks that are not dedicated to a slab class.
+     */
+    private final int[] spareChunks;
+    private int spareCount;
+
+    /**
+     * Freed slots per slab class, as <tt>chunk &lt;&lt; 32 | offset</tt>.
+     */
+    private final long[][] freeSlots;
+    private final int[] freeCounts;
+
+    /**
+     * The chunk each slab class is currently cutting new slots from, -1 if none,
+     * and the offset of the next new slot in it.
+     */
+    private final int[] carveChunk;
+    private final int[] carveOffset;
+
+    /**
+     * Number of bytes in slots that are handed out.
+     */
+    private long allocatedBytes;
+
+    /**
+     * @param capacity the maximum number of bytes to take from the operating system.
+     */
+    public OffHeapStore(long capacity) {
+        this(capacity, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param capacity the maximum number of bytes to take from the operating system.
+     * @param chunkSize the size of a chunk, a power of two of at least 64 bytes.
+     */
+    public OffHeapStore(long capacity, int chunkSize) {
+        if (Integer.bitCount(chunkSize) != 1 || chunkSize < (1 << MIN_SLAB_SHIFT)) {
+            throw new IllegalArgumentException("chunkSize must be a power of two of at least 64: " + chunkSize);
+        }
+        this.capacity = capacity;
+        this.chunkSize = chunkSize;
+        this.maxChunks = (int) Math.min(Integer.MAX_VALUE - 8, capacity / chunkSize);
+        this.chunkClass = new int[maxChunks];
+        this.chunkLive = new int[maxChunks];
+        this.spareChunks = new int[maxChunks];
+        int classes = Integer.numberOfTrailingZeros(chunkSize) - MIN_SLAB_SHIFT + 1;
+        freeSlots = new long[classes][];
+        freeCounts = new int[classes];
+        carveChunk = new int[classes];
+        carveOffset = new int[classes];
+        for (int i = 0; i < classes; i++) {
+            freeSlots[i] = new long[16];
+        }
+        Arrays.fill(carveChunk, -1);
+    }
+
+    /**
+     * Reserves a slot for a value of the given length.
+     *
+     * @param length the length of the value in bytes.
+     * @return the handle of the slot, or null if the store is full or the
+     *      value is larger than a chunk.
+     */
+    public synchronized Handle allocate(int length) {
+        if (length > chunkSize) {
+            return null;
+        }
+        int slabClass = slabClassOf(length);
+        int slabSize = 1 << (slabClass + MIN_SLAB_SHIFT);
+        long address;
+        if (freeCounts[slabClass] > 0) {
+            address = freeSlots[slabClass][--freeCounts[slabClass]];
+        } else {
+            if (carveChunk[slabClass] < 0 || carveOffset[slabClass] + slabSize > chunkSize) {
+                int chunk = takeChunk();
+                if (chunk < 0) {
+                    return null;
+                }
+                chunkClass[chunk] = slabClass;
+                carveChunk[slabClass] = chunk;
+                carveOffset[slabClass] = 0;
+            }
+            address = ((long) carveChunk[slabClass] << 32) | carveOffset[slabClass];
+            carveOffset[slabClass] += slabSize;
+        }
+        chunkLive[(int) (address >>> 32)]++;
+        allocatedBytes += slabSize;
+        return new Handle((int) (address >>> 32), (int) address, slabSize, length);
+    }
+
+    /**
+     * Returns a slot to the store. The handle must not be used afterwards.
+     *
+     * @param handle the handle of the slot.
+     */
+    public synchronized void free(Handle handle) {
+        int slabClass = slabClassOf(handle.slabSize);
+        if (freeCounts[slabClass] == freeSlots[slabClass].length) {
+            freeSlots[slabClass] = Arrays.copyOf(freeSlots[slabClass], freeCounts[slabClass] * 2);
+        }
+        freeSlots[slabClass][freeCounts[slabClass]++] = ((long) handle.chunk << 32) | handle.offset;
+        chunkLive[handle.chunk]--;
+        allocatedBytes -= handle.slabSize;
+    }
+
+    /**
+     * Copies a value into its slot.
+     *
+     * @param handle the handle returned by {@link #allocate(int)}.
+     * @param bytes the value, exactly as long as requested when allocating.
+     */
+    public void write(Handle handle, byte[] bytes) {
+        ByteBuffer buffer = chunk(handle.chunk).duplicate();
+        buffer.position(handle.offset);
+        buffer.put(bytes, 0, handle.length);
+    }
+
+    /**
+     * Copies a value out of its slot.
+     *
+     * @param handle the handle of the slot.
+     * @return the value.
+     */
+    public byte[] read(Handle handle) {
+        byte[] bytes = new byte[handle.length];
+        ByteBuffer buffer = chunk(handle.chunk).duplicate();
+        buffer.position(handle.offset);
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Releases every slot. All handles become invalid; the chunks are kept
+     * and reused.
+     */
+    public synchronized void clear() {
+        Arrays.fill(freeCounts, 0);
+        Arrays.fill(carveChunk, -1);
+        Arrays.fill(carveOffset, 0);
+        Arrays.fill(chunkLive, 0);
+        spareCount = 0;
+        for (int chunk = chunks.size() - 1; chunk >= 0; chunk--) {
+            chunkClass[chunk] = -1;
+            spareChunks[spareCount++] = chunk;
+        }
+        allocatedBytes = 0;
+    }
+
+    /**
+     * Returns a chunk that is not dedicated to any slab class: a spare one,
+     * a new one if the capacity allows, or one reclaimed from another class.
+     *
+     * @return the index of the chunk, or -1 if the store is full.
+     */
+    private int takeChunk() {
+        if (spareCount == 0) {
+            if (chunks.size() < maxChunks) {
+                chunks.add(ByteBuffer.allocateDirect(chunkSize));
+                return chunks.size() - 1;
+            }
+            reclaimEmptyChunks();
+            if (spareCount == 0) {
+                return -1;
+            }
+        }
+        return spareChunks[--spareCount];
+    }
+
+    /**
+     * Takes every chunk without live slots away from its slab class and drops
+     * its slots from the free list of that class.
+     */
+    private void reclaimEmptyChunks() {
+        boolean[] reclaimed = new boolean[chunks.size()];
+        boolean any = false;
+        for (int chunk = 0; chunk < chunks.size(); chunk++) {
+            if (chunkClass[chunk] >= 0 && chunkLive[chunk] == 0) {
+                int slabClass = chunkClass[chunk];
+                if (carveChunk[slabClass] == chunk) {
+                    carveChunk[slabClass] = -1;
+                }
+                chunkClass[chunk] = -1;
+                spareChunks[spareCount++] = chunk;
+                reclaimed[chunk] = true;
+                any = true;
+            }
+        }
+        if (!any) {
+            return;
+        }
+        for (int slabClass = 0; slabClass < freeSlots.length; slabClass++) {
+            long[] slots = freeSlots[slabClass];
+            int kept = 0;
+            for (int i = 0; i < freeCounts[slabClass]; i++) {
+                if (!reclaimed[(int) (slots[i] >>> 32)]) {
+                    slots[kept++] = slots[i];
+                }
+            }
+            freeCounts[slabClass] = kept;
+        }
+    }
+
+    /**
+     * @return the number of bytes in slots that are in use.
+     */
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @return the maximum number of bytes the store takes from the operating system.
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    private synchronized ByteBuffer chunk(int index) {
+        return chunks.get(index);
+    }
+
+    private static int slabClassOf(int length) {
+        int shift = 32 - Integer.numberOfLeadingZeros(Math.max(length, 1) - 1);
+        return Math.max(shift, MIN_SLAB_SHIFT) - MIN_SLAB_SHIFT;
+    }
+
+    /**
+     * Reference to a value in the store.
+     */
+    public static final class Handle {
+
+        final int chunk;
+        final int offset;
+
+        /**
+         * The size of the slot, i.e. the off-heap bytes the value occupies.
+         */
+        final int slabSize;
+
+        /**
+         * The length of the value.
+         */
+        final int length;
+
+        Handle(int chunk, int offset, int slabSize, int length) {
+            this.chunk = chunk;
+            this.offset = offset;
+            this.slabSize = slabSize;
+            this.length = length;
+        }
+
+        /**
+         * @return the number of off-heap bytes the value occupies.
+         */
+        public int getSlabSize() {
+            return slabSize;
+        }
+    }
+}
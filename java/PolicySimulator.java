@@ -0,0 +1,89 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Replays a recorded key stream against every {@link EvictionPolicy} and
+ * reports the hit rate of each. The trace is a text file with one access per
+ * line; the first whitespace separated token of a line is the key, anything
+ * after it is ignored. Capacity is counted in entries.<p>
+ *
+ * Usage: <tt>java PolicySimulator &lt;trace file&gt; &lt;capacity&gt;</tt>
+ */
+public class PolicySimulator {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java PolicySimulator <trace file> <capacity>");
+            return;
+        }
+        List<String> trace = readTrace(args[0]);
+        int capacity = Integer.parseInt(args[1]);
+
+        Map<String, EvictionPolicy<String>> policies = new LinkedHashMap<>();
+        policies.put("LRU", new LruPolicy<>());
+        policies.put("SLRU", new SlruPolicy<>());
+        policies.put("W-TinyLFU", new WindowTinyLfuPolicy<>(capacity));
+
+        System.out.println("Trace: " + args[0] + ", " + trace.size() + " accesses, capacity " + capacity);
+        for (Map.Entry<String, EvictionPolicy<String>> entry : policies.entrySet()) {
+            double hitRate = simulate(entry.getValue(), trace, capacity);
+            System.out.println(String.format("%-10s hit rate %6.2f%%", entry.getKey(), hitRate * 100));
+        }
+    }
+
+    /**
+     * Replays the trace against a single policy.
+     *
+     * @param policy the policy to measure; it should be empty.
+     * @param trace the keys in access order.
+     * @param capacity the maximum number of entries.
+     * @param <K> <K>
+     * @return the hit rate between 0 and 1.
+     */
+    public static <K> double simulate(EvictionPolicy<K> policy, List<K> trace, int capacity) {
+        Map<K, Object> resident = new HashMap<>();
+        long hits = 0;
+        for (K key : trace) {
+            Object handle = resident.get(key);
+            if (handle != null) {
+                hits++;
+                policy.recordAccess(handle);
+                continue;
+            }
+            resident.put(key, policy.recordInsert(key));
+            while (resident.size() > capacity) {
+                K victim = policy.victim();
+                policy.recordRemoval(resident.remove(victim));
+            }
+        }
+        return trace.isEmpty() ? 0 : (double) hits / trace.size();
+    }
+
+    private static List<String> readTrace(String file) throws IOException {
+        List<String> trace = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                int end = 0;
+                while (end < line.length() && !Character.isWhitespace(line.charAt(end))) {
+                    end++;
+                }
+                trace.add(line.substring(0, end));
+            }
+        }
+        return trace;
+    }
+}
@@ -0,0 +1,144 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+
+/**
+ * Striped, lossy ring buffer used to record cache hits without taking the
+ * cache lock. Every thread writes into the stripe selected by its thread id,
+ * so in practice each thread owns a ring buffer of its own. The recorded
+ * elements are later replayed in a batch by a single draining thread, which
+ * for {@link DefaultCache} is the maintenance thread or a writer.<p>
+ *
+ * When a stripe is full, new elements are simply dropped. The cache only
+ * uses the buffer to reorder its LRU list, so losing a record means an entry
+ * keeps its old position; at most <tt>stripes * bufferSize</tt> accesses can
+ * be pending or lost between two drains, which bounds how far the eviction
+ * order can drift from strict LRU.
+ * @param <E> <E>
+ */
+public class ReadBuffer<E> {
+
+    /**
+     * Capacity of each stripe. Always a power of two.
+     */
+    private final int bufferSize;
+
+    /**
+     * Number of pending elements in a stripe after which a drain is requested.
+     */
+    private final int drainThreshold;
+
+    /**
+     * Mask used to select the stripe of the calling thread.
+     */
+    private final int stripeMask;
+
+    /**
+     * The ring buffers, one per stripe.
+     */
+    private final AtomicReferenceArray<E>[] buffers;
+
+    /**
+     * Number of elements ever written to each stripe.
+     */
+    private final AtomicLongArray writeCounts;
+
+    /**
+     * Number of elements ever drained from each stripe. Only advanced by the
+     * draining thread.
+     */
+    private final AtomicLongArray readCounts;
+
+    /**
+     * Creates a read buffer with one stripe per pair of processors.
+     *
+     * @param bufferSize the capacity of each stripe, rounded up to a power of two.
+     */
+    public ReadBuffer(int bufferSize) {
+        this(Runtime.getRuntime().availableProcessors() * 2, bufferSize);
+    }
+
+    /**
+     * @param stripes the number of stripes, rounded up to a power of two.
+     * @param bufferSize the capacity of each stripe, rounded up to a power of two.
+     */
+    public ReadBuffer(int stripes, int bufferSize) {
+        if (stripes <= 0 || bufferSize <= 0) {
+            throw new IllegalArgumentException("stripes and bufferSize must be positive");
+        }
+        int stripeCount = ceilingPowerOfTwo(stripes);
+        this.bufferSize = ceilingPowerOfTwo(bufferSize);
+        this.drainThreshold = Math.max(1, this.bufferSize / 2);
+        this.stripeMask = stripeCount - 1;
+        this.buffers = newBuffers(stripeCount);
+        for (int i = 0; i < stripeCount; i++) {
+            buffers[i] = new AtomicReferenceArray<>(this.bufferSize);
+        }
+        this.writeCounts = new AtomicLongArray(stripeCount);
+        this.readCounts = new AtomicLongArray(stripeCount);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> AtomicReferenceArray<E>[] newBuffers(int count) {
+        return (AtomicReferenceArray<E>[]) new AtomicReferenceArray<?>[count];
+    }
+
+    private static int ceilingPowerOfTwo(int x) {
+        int n = 1;
+        while (n < x) {
+            n <<= 1;
+        }
+        return n;
+    }
+
+    /**
+     * Records an element in the stripe of the calling thread. The element is
+     * dropped if the stripe is full or another thread sharing the stripe won
+     * the race for the slot.
+     *
+     * @param e the element to record.
+     * @return true if the stripe has enough pending elements to be worth draining.
+     */
+    public boolean offer(E e) {
+        int stripe = (int) Thread.currentThread().getId() & stripeMask;
+        long head = readCounts.get(stripe);
+        long tail = writeCounts.get(stripe);
+        long pending = tail - head;
+        if (pending >= bufferSize) {
+            return true;
+        }
+        if (writeCounts.compareAndSet(stripe, tail, tail + 1)) {
+            buffers[stripe].lazySet((int) (tail & (bufferSize - 1)), e);
+            pending++;
+        }
+        return pending >= drainThreshold;
+    }
+
+    /**
+     * Replays all pending elements to the consumer. Callers must make sure
+     * only one thread drains at a time.
+     *
+     * @param consumer receives the pending elements in the order they were
+     *      recorded within each stripe.
+     */
+    public void drain(Consumer<? super E> consumer) {
+        for (int stripe = 0; stripe < buffers.length; stripe++) {
+            AtomicReferenceArray<E> buffer = buffers[stripe];
+            long head = readCounts.get(stripe);
+            long tail = writeCounts.get(stripe);
+            while (head < tail) {
+                int index = (int) (head & (bufferSize - 1));
+                E e = buffer.get(index);
+                if (e == null) {
+                    // The writer claimed the slot but has not published yet.
+                    break;
+                }
+                buffer.lazySet(index, null);
+                consumer.accept(e);
+                head++;
+            }
+            readCounts.lazySet(stripe, head);
+        }
+    }
+}
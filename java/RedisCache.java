@@ -1,34 +1,117 @@
 
 public class RedisCache {
     private static final Logger logger = LoggerFactory.getLogger(RedisCache.class);
-    private static final long MAX_SIZE = 2048;
+    private static final long MAX_SIZE = 8192; //多语言有几千条，要能全放下，不然预热进来的互相挤掉
     private static final long EXPIRE = 15; //可适当调大
-    private LoadingCache<String, Optional<SysLan>> lanCache;
+    private static final long NEGATIVE_EXPIRE = 60 * 1000; //查不到的key也缓存一分钟，免得每次都去redis
+    private NearCache<String, SysLan> lanCache;
+    private static final String LAN_INVALIDATION_CHANNEL = "slan:invalidate";
+    // 改了多语言的节点通过redis pub/sub通知其他节点
+    private InvalidationChannel<String> lanInvalidationChannel;
+    private static final String LAN_PREFIX = "slan:";
+    private static final int WARM_UP_BATCH = 500; //每次MGET的key数
+    private static final long WARM_UP_TIMEOUT = 60 * 1000; //预热最多跑一分钟，redis卡住时剩下的按需加载
+    // 本地快照文件，不配置就不用快照
+    private String lanSnapshotFile = System.getProperty("slan.snapshot");
  @PostConstruct
     public void init() {
-        lanCache = CacheBuilder.newBuilder().maximumSize(MAX_SIZE)
-                .expireAfterWrite(EXPIRE, TimeUnit.MINUTES).build(new CacheLoader<String, Optional<SysLan>>() {
-                    @Override
-                    public Optional<SysLan> load(String key) throws Exception {
-                        // https://blog.csdn.net/codingtu/article/details/89577316
-                            return loadLanData(key);
-
-                    }
-                });
+        // 没有redis时只有本进程一个节点，进程内通知就够了
+        lanInvalidationChannel = null == redisManager ? new InMemoryInvalidationChannel<>()
+                : new RedisInvalidationChannel(LAN_INVALIDATION_CHANNEL, redisManager::publish, redisManager::subscribe);
+        lanCache = new NearCache<>("lan", MAX_SIZE, TimeUnit.MINUTES.toMillis(EXPIRE), NEGATIVE_EXPIRE,
+                this::loadLanData, lanInvalidationChannel);
+        // 先用本地快照顶上，redis连不上也能用，再在后台从redis全量刷新
+        // 单独起线程，不占CacheMaintenance的公共线程，redis慢的时候不耽误其他缓存的过期清理
+        loadLanSnapshot();
+        Thread warmUp = new Thread(this::warmUpLan, "lan-warm-up");
+        warmUp.setDaemon(true);
+        warmUp.start();
     }
 
-    private Optional<SysLan> loadLanData(String key) {
-        
-        SysLan sysLan = null;
+    /**
+     * 启动预热：SCAN出所有slan:*，按批MGET，并行解析后放进本地缓存，顺便写一份本地快照。
+     * 超过WARM_UP_TIMEOUT就不再MGET，已经读到的照样放进缓存，但不写快照，免得快照缺数据
+     */
+    public void warmUpLan() {
+        if (null == redisManager) {
+            return;
+        }
+        // 先记下失效版本再读redis，读的过程中被invalidateLan的key不放进缓存
+        long[] stamp = lanCache.invalidationStamp();
+        long start = System.currentTimeMillis();
+        List<String> keys = new ArrayList<>(redisManager.scan(LAN_PREFIX + "*"));
+        Map<String, String> raw = new HashMap<>(keys.size() * 4 / 3 + 1);
+        boolean complete = true;
+        for (int i = 0; i < keys.size(); i += WARM_UP_BATCH) {
+            if (System.currentTimeMillis() - start > WARM_UP_TIMEOUT) {
+                logger.warn("lan warm up timed out after {} of {} keys", i, keys.size());
+                complete = false;
+                break;
+            }
+            List<String> batch = keys.subList(i, Math.min(keys.size(), i + WARM_UP_BATCH));
+            List<String> values = redisManager.mget(batch);
+            for (int j = 0; j < batch.size(); j++) {
+                String value = values.get(j);
+                if (StringUtils.isNotBlank(value)) {
+                    raw.put(batch.get(j).substring(LAN_PREFIX.length()), value);
+                }
+            }
+        }
+        int loaded = lanCache.preload(parseLan(raw), start, stamp);
+        logger.info("warmed up {} of {} lan entries in {}ms", loaded, raw.size(), System.currentTimeMillis() - start);
+        if (complete && lanSnapshotFile != null) {
+            try {
+                StringMapSnapshot.write(Paths.get(lanSnapshotFile), raw, start);
+            } catch (IOException e) {
+                logger.warn("write lan snapshot failed: " + lanSnapshotFile, e);
+            }
+        }
+    }
+
+    private void loadLanSnapshot() {
+        if (lanSnapshotFile == null || !Files.exists(Paths.get(lanSnapshotFile))) {
+            return;
+        }
+        try {
+            long[] stamp = lanCache.invalidationStamp();
+            Map<String, String> raw = new HashMap<>();
+            // 按快照里记的读取时间算剩下的有效期，太旧的快照一条也不会放进去
+            long readAt = StringMapSnapshot.read(Paths.get(lanSnapshotFile), raw);
+            int loaded = lanCache.preload(parseLan(raw), readAt, stamp);
+            logger.info("loaded {} of {} lan entries from snapshot", loaded, raw.size());
+        } catch (IOException | RuntimeException e) {
+            logger.warn("load lan snapshot failed: " + lanSnapshotFile, e);
+        }
+    }
+
+    /**
+     * JSON解析比较慢，几千条并行解析
+     */
+    private static Map<String, SysLan> parseLan(Map<String, String> raw) {
+        return raw.entrySet().parallelStream().collect(Collectors.toMap(Map.Entry::getKey,
+                e -> JSONObject.parseObject(e.getValue(), SysLan.class)));
+    }
+
+    public Optional<SysLan> getLan(String key) {
+        return lanCache.get(key);
+    }
+
+    /**
+     * redis里的多语言改了以后调用，所有节点的本地缓存都会失效
+     */
+    public void invalidateLan(String key) {
+        lanCache.invalidate(key);
+    }
+
+    private SysLan loadLanData(String key) {
         if (null == redisManager) {
             return null;
         }
-        String value = redisManager.get("slan:" + key);
+        String value = redisManager.get(LAN_PREFIX + key);
         if (StringUtils.isNotBlank(value)) {
-            sysLan = JSONObject.parseObject(value, SysLan.class);
-            return Optional.of(sysLan);
+            return JSONObject.parseObject(value, SysLan.class);
         }
-        return Optional.empty();
+        return null;
     }
 
     /****** java.util.NoSuchElementException: No value present *****/ 滥用Optional，本意是想解决 cacheloader returned null for key
\ No newline at end of file
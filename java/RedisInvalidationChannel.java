@@ -0,0 +1,66 @@
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+
+/**
+ * {@link InvalidationChannel} over Redis pub/sub, connecting the near caches
+ * of every process that uses the same Redis. The Redis client is passed in
+ * as two functions, so this class does not depend on a particular client:
+ * one publishes a message on a Redis channel, the other subscribes a
+ * listener to a Redis channel and calls it with every message received.<p>
+ *
+ * Redis pub/sub does not keep messages for subscribers that are not
+ * connected, so an invalidation can be lost while the connection is down.
+ * The maximum lifetime of the near cache bounds how long a stale copy
+ * survives in that case.
+ */
+public class RedisInvalidationChannel implements InvalidationChannel<String> {
+
+    /**
+     * Prefix of a message carrying a key. A message without it means every
+     * key changed, so any string, including the empty one, can be a key.
+     */
+    private static final String KEY_PREFIX = "k:";
+
+    private static final String ALL_KEYS = "*";
+
+    private final String channel;
+
+    private final BiConsumer<String, String> publisher;
+
+    private final List<Consumer<? super String>> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param channel the name of the Redis channel.
+     * @param publisher publishes a message (second argument) on a Redis
+     *      channel (first argument), e.g. <tt>jedis::publish</tt>.
+     * @param subscriber subscribes a listener (second argument) to a Redis
+     *      channel (first argument). Called once, from the constructor.
+     */
+    public RedisInvalidationChannel(String channel, BiConsumer<String, String> publisher,
+            BiConsumer<String, Consumer<String>> subscriber) {
+        this.channel = channel;
+        this.publisher = publisher;
+        subscriber.accept(channel, this::receive);
+    }
+
+    public void publish(String key) {
+        publisher.accept(channel, key == null ? ALL_KEYS : KEY_PREFIX + key);
+    }
+
+    public void subscribe(Consumer<? super String> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Handles a message received from Redis.
+     */
+    private void receive(String message) {
+        String key = message.startsWith(KEY_PREFIX) ? message.substring(KEY_PREFIX.length()) : null;
+        for (Consumer<? super String> listener : listeners) {
+            listener.accept(key);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+/**
+ * Why an entry left a cache.
+ */
+public enum RemovalCause {
+
+    /**
+     * Removed by the user, through <tt>remove</tt>.
+     */
+    EXPLICIT,
+
+    /**
+     * Replaced by a new value for the same key.
+     */
+    REPLACED,
+
+    /**
+     * Older than the maximum lifetime of the cache or its own lifetime.
+     */
+    EXPIRED,
+
+    /**
+     * Evicted because the cache was too full.
+     */
+    SIZE
+}
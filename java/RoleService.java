@@ -5,18 +5,44 @@ public class ROLEService extends BaseService {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    private static final long ROLE_EXPIRE = 5 * 60 * 1000; //权限缓存5分钟
+    private static final CacheRegions regions = new CacheRegions(ROLE_EXPIRE);
+    // 代理的规则只算一次，每次只把SqlSession里拿到的mapper绑上去
+    private static final CachingProxy.Factory<RoleMapper> roleMappers = CachingProxy.builder(RoleMapper.class)
+            .regions(regions).cache("get", "role", -1).evict("set", "role").factory();
 
 
     public List<Map> get(String userId) {
-        RoleMapper mapper = super.getSqlSession().getMapper(RoleMapper.class);
+        RoleMapper mapper = roleMapper();
         List<Map> right = mapper.get(userId);
-        return right;
+        return copy(right);
     }
     public List<Map> set(String userId) {
-        RoleMapper mapper = super.getSqlSession().getMapper(RoleMapper.class);
+        RoleMapper mapper = roleMapper();
         List<Map> right = mapper.set(userId);
         return right;
     }
 
+    /**
+     * 一次请求里同一个用户的权限会查很多次，get的结果按userId缓存，set之后失效
+     */
+    private RoleMapper roleMapper() {
+        return roleMappers.bind(super.getSqlSession().getMapper(RoleMapper.class));
+    }
+
+    /**
+     * 缓存里的结果是大家共用的，调用方改了会改到缓存里，返回一份拷贝
+     */
+    private static List<Map> copy(List<Map> rows) {
+        if (rows == null) {
+            return null;
+        }
+        List<Map> copy = new ArrayList<>(rows.size());
+        for (Map row : rows) {
+            copy.add(new LinkedHashMap(row));
+        }
+        return copy;
+    }
+
      
 }
\ No newline at end of file
@@ -0,0 +1,104 @@
+/**
+ * Segmented LRU eviction. New entries go into a probation segment; an entry
+ * that is hit while on probation is promoted to the protected segment, which
+ * holds at most 80% of the entries. Entries pushed out of the protected
+ * segment go back to probation. Victims are taken from probation first, so
+ * keys that are touched only once (scans) cannot flush the entries that are
+ * used repeatedly.
+ * @param <K> <K>
+ */
+public class SlruPolicy<K> implements EvictionPolicy<K> {
+
+    /**
+     * Share of the entries the protected segment may hold.
+     */
+    private static final double PROTECTED_RATIO = .80;
+
+    /**
+     * Segment ids stored in the nodes.
+     */
+    private static final int PROBATION = 0;
+    private static final int PROTECTED = 1;
+
+    /**
+     * Entries on probation, most recently used first.
+     */
+    private LinkedList<K> probation = new LinkedList<>();
+
+    /**
+     * Entries that were hit at least once, most recently used first.
+     */
+    private LinkedList<K> protectedList = new LinkedList<>();
+
+    private int probationSize;
+    private int protectedSize;
+
+    public Object recordInsert(K key) {
+        Node<K> node = new Node<>(key, PROBATION);
+        probation.addFirst(node);
+        probationSize++;
+        return node;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void recordAccess(Object handle) {
+        Node<K> node = (Node<K>) handle;
+        node.remove();
+        if (node.segment == PROBATION) {
+            probationSize--;
+            node.segment = PROTECTED;
+            protectedSize++;
+        }
+        protectedList.addFirst(node);
+        // Demote the least recently used protected entries if the segment
+        // outgrew its share.
+        int maxProtected = (int) ((probationSize + protectedSize) * PROTECTED_RATIO);
+        while (protectedSize > Math.max(1, maxProtected)) {
+            Node<K> demoted = (Node<K>) protectedList.getLast();
+            demoted.remove();
+            protectedSize--;
+            demoted.segment = PROBATION;
+            probation.addFirst(demoted);
+            probationSize++;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void recordRemoval(Object handle) {
+        Node<K> node = (Node<K>) handle;
+        node.remove();
+        if (node.segment == PROBATION) {
+            probationSize--;
+        } else {
+            protectedSize--;
+        }
+    }
+
+    public K victim() {
+        LinkedListNode<K> node = probation.getLast();
+        if (node == null) {
+            node = protectedList.getLast();
+        }
+        return node == null ? null : node.object;
+    }
+
+    public void clear() {
+        probation = new LinkedList<>();
+        protectedList = new LinkedList<>();
+        probationSize = 0;
+        protectedSize = 0;
+    }
+
+    /**
+     * List node that remembers which segment it is in.
+     */
+    static class Node<K> extends LinkedListNode<K> {
+
+        int segment;
+
+        Node(K key, int segment) {
+            super(key, null, null);
+            this.segment = segment;
+        }
+    }
+}
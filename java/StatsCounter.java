@@ -0,0 +1,137 @@
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Collects the statistics of a cache. Every counter is a {@link LongAdder},
+ * so recording a hit or miss from many threads at once does not contend on
+ * a single memory location and needs no lock.<p>
+ *
+ * Eviction runs are recorded in a histogram with one bucket per power of two
+ * of microseconds.
+ */
+public class StatsCounter {
+
+    /**
+     * Number of buckets of the eviction latency histogram. The last bucket
+     * holds everything from 2^30 microseconds, about 17.9 minutes, up.
+     */
+    static final int LATENCY_BUCKETS = 32;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loadSuccesses = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder totalLoadTime = new LongAdder();
+    private final LongAdder[] removals = new LongAdder[RemovalCause.values().length];
+    private final LongAdder evictedWeight = new LongAdder();
+    private final LongAdder[] evictionLatency = new LongAdder[LATENCY_BUCKETS];
+
+    public StatsCounter() {
+        for (int i = 0; i < removals.length; i++) {
+            removals[i] = new LongAdder();
+        }
+        for (int i = 0; i < evictionLatency.length; i++) {
+            evictionLatency[i] = new LongAdder();
+        }
+    }
+
+    public void recordHit() {
+        hits.increment();
+    }
+
+    public void recordMiss() {
+        misses.increment();
+    }
+
+    /**
+     * @param loadTime the time the load took in nanoseconds.
+     */
+    public void recordLoadSuccess(long loadTime) {
+        loadSuccesses.increment();
+        totalLoadTime.add(loadTime);
+    }
+
+    /**
+     * @param loadTime the time the failed load took in nanoseconds.
+     */
+    public void recordLoadFailure(long loadTime) {
+        loadFailures.increment();
+        totalLoadTime.add(loadTime);
+    }
+
+    /**
+     * @param cause why the entry left the cache.
+     * @param weight the size the entry was accounted for.
+     */
+    public void recordRemoval(RemovalCause cause, int weight) {
+        removals[cause.ordinal()].increment();
+        if (cause == RemovalCause.SIZE) {
+            evictedWeight.add(weight);
+        }
+    }
+
+    /**
+     * Records how long a single run of size based eviction took.
+     *
+     * @param nanos the duration in nanoseconds.
+     */
+    public void recordEvictionRun(long nanos) {
+        long micros = nanos / 1000;
+        int bucket = Math.min(LATENCY_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        evictionLatency[bucket].increment();
+    }
+
+    /**
+     * @return the number of hits so far.
+     */
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of misses so far.
+     */
+    public long missCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns a snapshot of the counters. The counters are read one after the
+     * other while other threads keep recording, so the snapshot is not an
+     * atomic view, but every value in it is exact at the time it was read.
+     *
+     * @param entryCount the number of entries in the cache.
+     * @param totalWeight the size of the cache contents.
+     * @return the snapshot.
+     */
+    public CacheStats snapshot(long entryCount, long totalWeight) {
+        long[] removalCounts = new long[removals.length];
+        for (int i = 0; i < removals.length; i++) {
+            removalCounts[i] = removals[i].sum();
+        }
+        long[] latency = new long[evictionLatency.length];
+        for (int i = 0; i < evictionLatency.length; i++) {
+            latency[i] = evictionLatency[i].sum();
+        }
+        return new CacheStats(hits.sum(), misses.sum(), loadSuccesses.sum(), loadFailures.sum(),
+                totalLoadTime.sum(), removalCounts, evictedWeight.sum(), entryCount, totalWeight, latency);
+    }
+
+    /**
+     * Sets every counter back to zero.
+     */
+    public void reset() {
+        hits.reset();
+        misses.reset();
+        loadSuccesses.reset();
+        loadFailures.reset();
+        totalLoadTime.reset();
+        evictedWeight.reset();
+        for (LongAdder adder : removals) {
+            adder.reset();
+        }
+        for (LongAdder adder : evictionLatency) {
+            adder.reset();
+        }
+    }
+}
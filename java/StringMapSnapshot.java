@@ -0,0 +1,84 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Keeps a map of strings in a file, so a cache can be filled from local disk
+ * at startup before its remote store is reachable.<p>
+ *
+ * The file is a {@link CacheSnapshotFile} whose keys and values are UTF-8
+ * strings, so it is written to a temporary file first and moved into place,
+ * and a reader never sees a half written snapshot.
+ */
+public final class StringMapSnapshot {
+
+    private StringMapSnapshot() {
+    }
+
+    /**
+     * Writes the map to the file, replacing it.
+     *
+     * @param file the snapshot file.
+     * @param map the entries to store; null keys and values are skipped.
+     * @throws IOException if the file could not be written.
+     */
+    public static void write(Path file, Map<String, String> map) throws IOException {
+        write(file, map, System.currentTimeMillis());
+    }
+
+    /**
+     * Writes the map to the file, replacing it.
+     *
+     * @param file the snapshot file.
+     * @param map the entries to store; null keys and values are skipped.
+     * @param timestamp the time the entries were read from their source.
+     * @throws IOException if the file could not be written.
+     */
+    public static void write(Path file, Map<String, String> map, long timestamp) throws IOException {
+        try (CacheSnapshotFile.Writer writer = new CacheSnapshotFile.Writer(file)) {
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                if (entry.getKey() == null || entry.getValue() == null) {
+                    continue;
+                }
+                writer.write(entry.getKey().getBytes(StandardCharsets.UTF_8),
+                        entry.getValue().getBytes(StandardCharsets.UTF_8), timestamp, -1);
+            }
+            writer.commit();
+        }
+    }
+
+    /**
+     * Reads a snapshot written by {@link #write(Path, Map)}.
+     *
+     * @param file the snapshot file.
+     * @return the entries of the snapshot.
+     * @throws IOException if the file could not be read or is not a snapshot.
+     */
+    public static Map<String, String> read(Path file) throws IOException {
+        Map<String, String> map = new HashMap<>();
+        read(file, map);
+        return map;
+    }
+
+    /**
+     * Reads a snapshot written by {@link #write(Path, Map, long)}.
+     *
+     * @param file the snapshot file.
+     * @param map receives the entries of the snapshot.
+     * @return the oldest timestamp of the entries, -1 if there are none.
+     * @throws IOException if the file could not be read or is not a snapshot.
+     */
+    public static long read(Path file, Map<String, String> map) throws IOException {
+        long[] oldest = { -1 };
+        CacheSnapshotFile.read(file, (key, value, timestamp, expireTime) -> {
+            map.put(new String(key, StandardCharsets.UTF_8), new String(value, StandardCharsets.UTF_8));
+            if (oldest[0] < 0 || timestamp < oldest[0]) {
+                oldest[0] = timestamp;
+            }
+        });
+        return oldest[0];
+    }
+}
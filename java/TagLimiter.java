@@ -0,0 +1,178 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按Tag限流和采样。某个Tag刷屏的时候（比如催收分配里的"未找到当前借款用户"），
+ * 只放过一部分日志，其余的只计数，定期打一条汇总说丢了多少条。
+ * <p>
+ * 限流是令牌桶，用一个AtomicLong记下一个令牌的时间（GCRA），一次CAS完成；
+ * 采样用ThreadLocalRandom。打日志的路径上没有锁。
+ * <p>
+ * 汇总由自己的一个守护线程打，第一次配置限流或采样时才启动，不占缓存的维护线程。
+ */
+final class TagLimiter {
+
+    /** 多久打一次汇总，毫秒 */
+    static final long SUMMARY_INTERVAL = 60000;
+
+    /** 配置了限流或采样的Tag */
+    private static final Map<Tag, TagLimiter> LIMITERS = new ConcurrentHashMap<>();
+
+    /** 打汇总的线程，第一次用到时才创建 */
+    private static volatile ScheduledExecutorService summaryExecutor;
+
+    /** 每个令牌的间隔，纳秒，0表示不限流 */
+    private volatile long interval;
+
+    /** 最多可以提前用掉多少时间的令牌，即 (burst - 1) * interval */
+    private volatile long tolerance;
+
+    /** 留下的比例，1表示不采样 */
+    private volatile double sampleRate = 1;
+
+    /** 下一个令牌的时间，早于现在说明桶是满的 */
+    private final AtomicLong nextPermit = new AtomicLong(System.nanoTime());
+
+    /** 上次汇总以来丢掉的条数 */
+    private final LongAdder suppressed = new LongAdder();
+
+    /** 一共丢掉的条数 */
+    private final LongAdder suppressedTotal = new LongAdder();
+
+    /** 最近丢日志的logger，汇总用它打出来 */
+    private volatile org.slf4j.Logger lastLogger;
+
+    private TagLimiter() {
+    }
+
+    /**
+     * 限流，每秒最多放过permitsPerSecond条，允许一下子来burst条
+     */
+    static void limit(Tag tag, double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("permitsPerSecond和burst必须大于0");
+        }
+        TagLimiter limiter = limiter(tag);
+        long interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        limiter.interval = interval;
+        limiter.tolerance = (burst - 1) * interval;
+    }
+
+    /**
+     * 采样，只留下rate比例的日志
+     */
+    static void sample(Tag tag, double rate) {
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException("rate必须在0到1之间");
+        }
+        limiter(tag).sampleRate = rate;
+    }
+
+    /**
+     * 去掉这个Tag的限流和采样
+     */
+    static void remove(Tag tag) {
+        TagLimiter limiter = LIMITERS.remove(tag);
+        if (limiter != null) {
+            limiter.summarize(tag);
+        }
+    }
+
+    /**
+     * @return 这个Tag一共被丢掉的条数
+     */
+    static long suppressedCount(Tag tag) {
+        TagLimiter limiter = LIMITERS.get(tag);
+        return limiter == null ? 0 : limiter.suppressedTotal.sum();
+    }
+
+    private static TagLimiter limiter(Tag tag) {
+        TagLimiter limiter = LIMITERS.computeIfAbsent(tag, t -> new TagLimiter());
+        if (summaryExecutor == null) {
+            scheduleSummary();
+        }
+        return limiter;
+    }
+
+    private static synchronized void scheduleSummary() {
+        if (summaryExecutor == null) {
+            ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "log-tag-summary");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(TagLimiter::summarizeAll, SUMMARY_INTERVAL, SUMMARY_INTERVAL,
+                    TimeUnit.MILLISECONDS);
+            summaryExecutor = executor;
+        }
+    }
+
+    private static void summarizeAll() {
+        try {
+            LIMITERS.forEach((tag, limiter) -> limiter.summarize(tag));
+        } catch (RuntimeException e) {
+            // 任务抛出异常以后就不会再执行了，这次打失败不能影响下一次
+        }
+    }
+
+    /**
+     * 这条日志能不能打
+     *
+     * @param tag 日志标签，可以为null
+     * @param logger 打日志的logger，丢掉时记下来打汇总用
+     * @return false表示被限流或采样丢掉了
+     */
+    static boolean tryAcquire(Tag tag, org.slf4j.Logger logger) {
+        if (tag == null || LIMITERS.isEmpty()) {
+            return true;
+        }
+        TagLimiter limiter = LIMITERS.get(tag);
+        return limiter == null || limiter.tryAcquire(logger);
+    }
+
+    private boolean tryAcquire(org.slf4j.Logger logger) {
+        double rate = sampleRate;
+        if (rate < 1 && ThreadLocalRandom.current().nextDouble() >= rate) {
+            suppress(logger);
+            return false;
+        }
+        long interval = this.interval;
+        if (interval == 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        while (true) {
+            long next = nextPermit.get();
+            long start = next - now > 0 ? next : now;
+            if (start - now > tolerance) {
+                suppress(logger);
+                return false;
+            }
+            if (nextPermit.compareAndSet(next, start + interval)) {
+                return true;
+            }
+        }
+    }
+
+    private void suppress(org.slf4j.Logger logger) {
+        suppressed.increment();
+        suppressedTotal.increment();
+        if (lastLogger != logger) {
+            lastLogger = logger;
+        }
+    }
+
+    private void summarize(Tag tag) {
+        long count = suppressed.sumThenReset();
+        org.slf4j.Logger logger = lastLogger;
+        if (count > 0 && logger != null) {
+            logger.warn("{}{}限流/采样丢掉了{}条日志", tag, Logger.separator, count);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+import java.util.function.Consumer;
+
+
+/**
+ * Hierarchical timing wheel used to expire cache entries that have a lifetime
+ * of their own. Every level is a ring of buckets, each bucket a
+ * {@link LinkedList} of timer nodes whose timestamp is the moment the entry
+ * expires. A node is placed on the coarsest level it fits in, so scheduling
+ * and cancelling are O(1). When the wheel is advanced, the buckets whose time
+ * slot has passed are emptied: nodes that are due move to a due list, from
+ * which they are handed to the expiry callback within a budget, the others
+ * are rescheduled onto a finer level.<p>
+ *
+ * The levels cover roughly 1 second, 1 minute, 1 hour and 18 hours per bucket.
+ * Anything further away goes into a single overflow bucket that is revisited
+ * every 12 days. Not thread safe; callers are expected to hold the cache lock.
+ * @param <K> <K>
+ */
+public class TimerWheel<K> {
+
+    /**
+     * Number of buckets per level. Each is a power of two.
+     */
+    private static final int[] BUCKETS = { 64, 64, 32, 16, 1 };
+
+    /**
+     * Bit shift turning a time in milliseconds into ticks of each level, i.e.
+     * the span of a bucket is <tt>1 &lt;&lt; SHIFT[i]</tt> milliseconds.
+     */
+    private static final int[] SHIFT = { 10, 16, 22, 26, 30 };
+
+    /**
+     * The buckets of every level.
+     */
+    private final LinkedList<K>[][] wheel;
+
+    /**
+     * Timers that are due but were not handed out yet, most overdue last.
+     */
+    private final LinkedList<K> due = new LinkedList<>();
+
+    /**
+     * Empty list swapped in for a bucket while it is being emptied.
+     */
+    private LinkedList<K> spare = new LinkedList<>();
+
+    /**
+     * The time in milliseconds the wheel was last advanced to.
+     */
+    private long time;
+
+    /**
+     * Creates a wheel whose clock starts at the given time.
+     *
+     * @param time the current time in milliseconds.
+     */
+    @SuppressWarnings("unchecked")
+    public TimerWheel(long time) {
+        this.time = time;
+        wheel = (LinkedList<K>[][]) new LinkedList<?>[BUCKETS.length][];
+        for (int i = 0; i < BUCKETS.length; i++) {
+            wheel[i] = (LinkedList<K>[]) new LinkedList<?>[BUCKETS[i]];
+            for (int j = 0; j < BUCKETS[i]; j++) {
+                wheel[i][j] = new LinkedList<>();
+            }
+        }
+    }
+
+    /**
+     * Schedules a key to expire at the given time.
+     *
+     * @param key the key to expire.
+     * @param expireTime the time in milliseconds at which the key expires.
+     * @return the timer node, needed to cancel the timer.
+     */
+    public LinkedListNode<K> schedule(K key, long expireTime) {
+        LinkedListNode<K> node = new LinkedListNode<>(key, null, null);
+        node.timestamp = expireTime;
+        bucketFor(expireTime).addFirst(node);
+        return node;
+    }
+
+    /**
+     * Cancels a timer. Timers that already fired are ignored.
+     *
+     * @param node the node returned by {@link #schedule(Object, long)}.
+     */
+    public void cancel(LinkedListNode<?> node) {
+        if (node != null && node.previous != null) {
+            node.remove();
+        }
+    }
+
+    /**
+     * Moves the clock forward and hands every key that is due to the callback.
+     *
+     * @param now the current time in milliseconds.
+     * @param expired receives the keys whose time has come.
+     * @return the number of keys handed to the callback.
+     */
+    public int advance(long now, Consumer<? super K> expired) {
+        return advance(now, Integer.MAX_VALUE, expired);
+    }
+
+    /**
+     * Moves the clock forward and hands at most <tt>maxExpired</tt> of the
+     * keys that are due to the callback, longest overdue first. Keys that are
+     * due but over the budget stay on the due list and are handed out first
+     * by the next call, so the work done under the cache lock stays bounded.
+     *
+     * @param now the current time in milliseconds.
+     * @param maxExpired the maximum number of keys to hand to the callback.
+     * @param expired receives the keys whose time has come.
+     * @return the number of keys handed to the callback.
+     */
+    public int advance(long now, int maxExpired, Consumer<? super K> expired) {
+        long previous = time;
+        if (now > previous) {
+            time = now;
+            for (int i = 0; i < BUCKETS.length; i++) {
+                long previousTicks = previous >>> SHIFT[i];
+                long currentTicks = now >>> SHIFT[i];
+                if (currentTicks == previousTicks) {
+                    // Coarser levels cannot have moved either.
+                    break;
+                }
+                collect(i, previousTicks, currentTicks - previousTicks);
+            }
+        }
+        int count = 0;
+        while (count < maxExpired) {
+            LinkedListNode<K> node = due.getLast();
+            if (node == null) {
+                break;
+            }
+            node.remove();
+            expired.accept(node.object);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Empties the buckets of a level that the clock passed over: nodes that
+     * are due go to the due list, the others onto a finer level.
+     */
+    private void collect(int level, long previousTicks, long delta) {
+        LinkedList<K>[] buckets = wheel[level];
+        int mask = buckets.length - 1;
+        int steps = (int) Math.min(delta + 1, buckets.length);
+        for (int i = 0; i < steps; i++) {
+            int index = (int) ((previousTicks + i) & mask);
+            // Swap in the spare list first, rescheduled nodes may land in
+            // the same bucket again.
+            LinkedList<K> bucket = buckets[index];
+            buckets[index] = spare;
+            LinkedListNode<K> node = bucket.getLast();
+            while (node != null) {
+                node.remove();
+                if (node.timestamp <= time) {
+                    due.addFirst(node);
+                } else {
+                    bucketFor(node.timestamp).addFirst(node);
+                }
+                node = bucket.getLast();
+            }
+            spare = bucket;
+        }
+    }
+
+    /**
+     * Returns the bucket a timer expiring at the given time belongs in.
+     */
+    private LinkedList<K> bucketFor(long expireTime) {
+        long duration = expireTime - time;
+        int last = BUCKETS.length - 1;
+        for (int i = 0; i < last; i++) {
+            if (duration < (1L << SHIFT[i + 1])) {
+                long ticks = expireTime >>> SHIFT[i];
+                return wheel[i][(int) (ticks & (BUCKETS[i] - 1))];
+            }
+        }
+        return wheel[last][0];
+    }
+}
@@ -0,0 +1,87 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * Turns cache keys and values into bytes and back, for caches that keep their
+ * values outside the Java heap or write them to disk.
+ * @param <V> <V>
+ */
+public interface ValueCodec<V> {
+
+    /**
+     * Codec for values that already are byte arrays.
+     */
+    ValueCodec<byte[]> BYTES = new ValueCodec<byte[]>() {
+        public byte[] encode(byte[] value) {
+            return value;
+        }
+
+        public byte[] decode(byte[] bytes) {
+            return bytes;
+        }
+    };
+
+    /**
+     * Codec for Strings, stored as UTF-8.
+     */
+    ValueCodec<String> STRING = new ValueCodec<String>() {
+        public byte[] encode(String value) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        public String decode(byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    /**
+     * Returns a codec that uses Java serialization. Convenient for snapshots
+     * of arbitrary objects, but slow and large compared to a dedicated codec.
+     *
+     * @param <V> <V>
+     * @return the codec.
+     */
+    static <V extends Serializable> ValueCodec<V> serializable() {
+        return new ValueCodec<V>() {
+            public byte[] encode(V value) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                    out.writeObject(value);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return bytes.toByteArray();
+            }
+
+            @SuppressWarnings("unchecked")
+            public V decode(byte[] bytes) {
+                try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                    return (V) in.readObject();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (ClassNotFoundException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * @param value the value, never null.
+     * @return the bytes of the value.
+     */
+    byte[] encode(V value);
+
+    /**
+     * @param bytes bytes produced by {@link #encode(Object)}.
+     * @return the value.
+     */
+    V decode(byte[] bytes);
+}
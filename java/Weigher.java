@@ -0,0 +1,19 @@
+/**
+ * Computes how much of the cache size an entry takes. Supplying a weigher
+ * lets the cache bound its size in whatever unit fits the values, such as
+ * payload length or row count, in O(1) per insert instead of estimating the
+ * size of the value by walking it.
+ * @param <K> <K>
+ * @param <V> <V>
+ */
+public interface Weigher<K, V> {
+
+    /**
+     * Returns the weight of an entry. Called once, when the entry is added.
+     *
+     * @param key key
+     * @param value value
+     * @return the weight, not negative.
+     */
+    int weigh(K key, V value);
+}
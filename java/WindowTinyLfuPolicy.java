@@ -0,0 +1,154 @@
+/**
+ * W-TinyLFU eviction. New entries first go into a small LRU admission window
+ * (1% of the entries). When the window overflows, its least recently used
+ * entry moves on as a candidate to the probation end of the main space,
+ * which is a segmented LRU (see {@link SlruPolicy}). When the cache has to
+ * evict, the newest candidate and the least recently used probation entry
+ * are compared: a {@link FrequencySketch} decides which of the two has been
+ * used more often recently, and the other one is evicted.
+ * One-off keys from scans therefore pass through the window without pushing
+ * popular entries out of the cache.
+ * @param <K> <K>
+ */
+public class WindowTinyLfuPolicy<K> implements EvictionPolicy<K> {
+
+    /**
+     * Share of the entries kept in the admission window.
+     */
+    private static final double WINDOW_RATIO = .01;
+
+    /**
+     * Share of the main space the protected segment may hold.
+     */
+    private static final double PROTECTED_RATIO = .80;
+
+    /**
+     * Segment ids stored in the nodes.
+     */
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final FrequencySketch sketch;
+
+    private LinkedList<K> window = new LinkedList<>();
+    private LinkedList<K> probation = new LinkedList<>();
+    private LinkedList<K> protectedList = new LinkedList<>();
+
+    private int windowSize;
+    private int probationSize;
+    private int protectedSize;
+
+    /**
+     * @param expectedSize the expected maximum number of entries in the cache,
+     *      used to size the frequency sketch.
+     */
+    public WindowTinyLfuPolicy(int expectedSize) {
+        sketch = new FrequencySketch(expectedSize);
+    }
+
+    @SuppressWarnings("unchecked")
+    public Object recordInsert(K key) {
+        sketch.increment(key);
+        SlruPolicy.Node<K> node = new SlruPolicy.Node<>(key, WINDOW);
+        window.addFirst(node);
+        windowSize++;
+        int maxWindow = Math.max(1, (int) ((windowSize + probationSize + protectedSize) * WINDOW_RATIO));
+        while (windowSize > maxWindow) {
+            SlruPolicy.Node<K> candidate = (SlruPolicy.Node<K>) window.getLast();
+            candidate.remove();
+            windowSize--;
+            candidate.segment = PROBATION;
+            probation.addFirst(candidate);
+            probationSize++;
+        }
+        return node;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void recordAccess(Object handle) {
+        SlruPolicy.Node<K> node = (SlruPolicy.Node<K>) handle;
+        sketch.increment(node.object);
+        node.remove();
+        switch (node.segment) {
+        case WINDOW:
+            window.addFirst(node);
+            break;
+        case PROBATION:
+            probationSize--;
+            node.segment = PROTECTED;
+            protectedSize++;
+            protectedList.addFirst(node);
+            demoteProtected();
+            break;
+        default:
+            protectedList.addFirst(node);
+            break;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void recordRemoval(Object handle) {
+        SlruPolicy.Node<K> node = (SlruPolicy.Node<K>) handle;
+        node.remove();
+        switch (node.segment) {
+        case WINDOW:
+            windowSize--;
+            break;
+        case PROBATION:
+            probationSize--;
+            break;
+        default:
+            protectedSize--;
+            break;
+        }
+    }
+
+    public K victim() {
+        LinkedListNode<K> candidate = probation.getFirst();
+        LinkedListNode<K> victim = probation.getLast();
+        if (victim == null) {
+            victim = protectedList.getLast();
+            if (victim == null) {
+                victim = window.getLast();
+            }
+            return victim == null ? null : victim.object;
+        }
+        if (candidate == victim) {
+            return victim.object;
+        }
+        // The candidate is only admitted if it is more popular than the
+        // entry it would replace.
+        if (sketch.frequency(candidate.object) > sketch.frequency(victim.object)) {
+            return victim.object;
+        }
+        return candidate.object;
+    }
+
+    public void clear() {
+        sketch.clear();
+        window = new LinkedList<>();
+        probation = new LinkedList<>();
+        protectedList = new LinkedList<>();
+        windowSize = 0;
+        probationSize = 0;
+        protectedSize = 0;
+    }
+
+    /**
+     * Moves the least recently used protected entries back to probation
+     * while the protected segment is larger than its share.
+     */
+    @SuppressWarnings("unchecked")
+    private void demoteProtected() {
+        int maxProtected = Math.max(1, (int) ((probationSize + protectedSize) * PROTECTED_RATIO));
+        while (protectedSize > maxProtected) {
+            SlruPolicy.Node<K> demoted = (SlruPolicy.Node<K>) protectedList.getLast();
+            demoted.remove();
+            protectedSize--;
+            demoted.segment = PROBATION;
+            probation.addFirst(demoted);
+            probationSize++;
+        }
+    }
+}
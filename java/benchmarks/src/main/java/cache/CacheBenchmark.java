@@ -0,0 +1,316 @@
+package cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Throughput benchmarks for the cache classes, to run before and after a
+ * change to them. The benchmarks are declared once and run at 1, 2, 4, ...
+ * 64 threads by the nested <tt>ThreadsN</tt> classes, so a run can be
+ * narrowed to one thread count with a regular expression such as
+ * <tt>CacheBenchmark.Threads8</tt>. Add <tt>-prof gc</tt> for the bytes each
+ * operation allocates.<p>
+ *
+ * Keys are drawn from precomputed arrays, either following a zipfian
+ * distribution (a few hot keys, a long tail) or a sequential scan, so the
+ * generator does not show up in the results.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class CacheBenchmark {
+
+    /**
+     * Number of distinct keys.
+     */
+    static final int KEY_SPACE = 1 << 16;
+
+    /**
+     * Length of the precomputed key sequences.
+     */
+    static final int SEQUENCE_LENGTH = 1 << 20;
+
+    static final Integer[] KEYS = new Integer[KEY_SPACE];
+
+    static final int[] ZIPF = zipf(KEY_SPACE, 0.99, SEQUENCE_LENGTH, 42);
+
+    static final int[] SCAN = new int[SEQUENCE_LENGTH];
+
+    static {
+        for (int i = 0; i < KEY_SPACE; i++) {
+            KEYS[i] = i;
+        }
+        for (int i = 0; i < SEQUENCE_LENGTH; i++) {
+            SCAN[i] = i % KEY_SPACE;
+        }
+    }
+
+    /**
+     * The position of a thread in the key sequences. Every thread starts at
+     * a random offset, so the threads do not hit the same keys in lock step.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int offset;
+        private long i;
+
+        @Setup
+        public void setUp() {
+            offset = new Random().nextInt(SEQUENCE_LENGTH);
+        }
+
+        Integer next(int[] sequence) {
+            return KEYS[sequence[(int) ((offset + i++) & (SEQUENCE_LENGTH - 1))]];
+        }
+    }
+
+    /**
+     * The cache implementations the throughput benchmarks run against.
+     */
+    @State(Scope.Benchmark)
+    public static class Caches {
+
+        @Param({"DefaultCache", "ReadBuffer", "ConcurrentDefaultCache"})
+        public String cache;
+
+        /**
+         * Holds every key.
+         */
+        Map<Integer, Integer> full;
+
+        /**
+         * Holds a quarter of the keys, so reading through it misses and evicts.
+         */
+        Map<Integer, Integer> small;
+
+        @Setup
+        public void setUp() {
+            full = create(KEY_SPACE * 2);
+            for (Integer key : KEYS) {
+                full.put(key, key);
+            }
+            small = create(KEY_SPACE / 4);
+        }
+
+        private Map<Integer, Integer> create(int maxEntries) {
+            switch (cache) {
+                case "DefaultCache":
+                    return new DefaultCache<>("bench", maxEntries, -1, (k, v) -> 1);
+                case "ReadBuffer":
+                    DefaultCache<Integer, Integer> buffered = new DefaultCache<>("bench", maxEntries, -1, (k, v) -> 1);
+                    buffered.enableReadBuffer(32);
+                    return buffered;
+                case "ConcurrentDefaultCache":
+                    return new ConcurrentDefaultCache<>("bench", maxEntries, -1,
+                            ConcurrentDefaultCache.DEFAULT_CONCURRENCY_LEVEL, (k, v) -> 1);
+                default:
+                    throw new IllegalArgumentException(cache);
+            }
+        }
+    }
+
+    /**
+     * A full cache, so that every put of a new key evicts.
+     */
+    @State(Scope.Benchmark)
+    public static class Evicting {
+
+        @Param({"LRU", "incremental", "W-TinyLFU"})
+        public String eviction;
+
+        DefaultCache<Integer, Integer> cache;
+
+        @Setup
+        public void setUp() {
+            cache = new DefaultCache<>("eviction", KEY_SPACE / 4, -1, (k, v) -> 1);
+            if ("incremental".equals(eviction)) {
+                cache.setIncrementalEviction(4, -1);
+            } else if ("W-TinyLFU".equals(eviction)) {
+                cache.setEvictionPolicy(new WindowTinyLfuPolicy<>(KEY_SPACE / 4));
+            }
+        }
+    }
+
+    /**
+     * Caches whose entries keep expiring, by the maximum lifetime of the
+     * cache and by lifetimes of their own.
+     */
+    @State(Scope.Benchmark)
+    public static class Expiring {
+
+        DefaultCache<Integer, Integer> lifetime;
+
+        DefaultCache<Integer, Integer> ttl;
+
+        @Setup
+        public void setUp() {
+            lifetime = new DefaultCache<>("expiry", -1, 1, (k, v) -> 1);
+            ttl = new DefaultCache<>("expiry", -1, -1, (k, v) -> 1);
+        }
+    }
+
+    /**
+     * A value of a few nested collections to measure.
+     */
+    @State(Scope.Benchmark)
+    public static class Sized {
+
+        Map<String, List<String>> value;
+
+        @Setup
+        public void setUp() {
+            value = new HashMap<>();
+            for (int i = 0; i < 16; i++) {
+                List<String> list = new ArrayList<>();
+                for (int j = 0; j < 8; j++) {
+                    list.add("value " + i + "/" + j);
+                }
+                value.put("key" + i, list);
+            }
+        }
+    }
+
+    @Benchmark
+    public Integer getZipf(Caches caches, Cursor cursor) {
+        return caches.full.get(cursor.next(ZIPF));
+    }
+
+    /**
+     * Reads a key and puts it on a miss, like a cache in front of a database.
+     */
+    @Benchmark
+    public Integer getPutZipf(Caches caches, Cursor cursor) {
+        return readThrough(caches.small, cursor.next(ZIPF));
+    }
+
+    @Benchmark
+    public Integer getPutScan(Caches caches, Cursor cursor) {
+        return readThrough(caches.small, cursor.next(SCAN));
+    }
+
+    @Benchmark
+    public Integer putRemove(Caches caches, Cursor cursor) {
+        Integer key = cursor.next(ZIPF);
+        caches.small.put(key, key);
+        return caches.small.remove(key);
+    }
+
+    /**
+     * Puts keys in a sequential scan, so that once the cache is full every
+     * put evicts.
+     */
+    @Benchmark
+    public Integer eviction(Evicting evicting, Cursor cursor) {
+        Integer key = cursor.next(SCAN);
+        return evicting.cache.put(key, key);
+    }
+
+    @Benchmark
+    public Integer expiry(Expiring expiring, Cursor cursor) {
+        return readThrough(expiring.lifetime, cursor.next(ZIPF));
+    }
+
+    @Benchmark
+    public Integer expiryTtl(Expiring expiring, Cursor cursor) {
+        Integer key = cursor.next(ZIPF);
+        Integer value = expiring.ttl.get(key);
+        if (value == null) {
+            expiring.ttl.put(key, key, 1 + (key & 7));
+        }
+        return value;
+    }
+
+    @Benchmark
+    public int sizeOfAnything(Sized sized) throws Exception {
+        return CacheSizes.sizeOfAnything(sized.value);
+    }
+
+    private static Integer readThrough(Map<Integer, Integer> map, Integer key) {
+        Integer value = map.get(key);
+        if (value == null) {
+            map.put(key, key);
+        }
+        return value;
+    }
+
+    /**
+     * Draws a sequence of ranks from a zipfian distribution over
+     * <tt>n</tt> items with the given exponent. Rank 0 is the most popular.
+     */
+    static int[] zipf(int n, double exponent, int length, long seed) {
+        double[] cumulative = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += 1.0 / Math.pow(i + 1, exponent);
+            cumulative[i] = sum;
+        }
+        Random random = new Random(seed);
+        int[] sequence = new int[length];
+        for (int i = 0; i < length; i++) {
+            double u = random.nextDouble() * sum;
+            int low = 0;
+            int high = n - 1;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (cumulative[mid] < u) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            // Scatter the hot keys over the key space, so they do not all
+            // land in the same segment or hash bucket.
+            sequence[i] = (int) ((low * 0x9E3779B1L) & (n - 1));
+        }
+        return sequence;
+    }
+
+    @Threads(1)
+    public static class Threads1 extends CacheBenchmark {
+    }
+
+    @Threads(2)
+    public static class Threads2 extends CacheBenchmark {
+    }
+
+    @Threads(4)
+    public static class Threads4 extends CacheBenchmark {
+    }
+
+    @Threads(8)
+    public static class Threads8 extends CacheBenchmark {
+    }
+
+    @Threads(16)
+    public static class Threads16 extends CacheBenchmark {
+    }
+
+    @Threads(32)
+    public static class Threads32 extends CacheBenchmark {
+    }
+
+    @Threads(64)
+    public static class Threads64 extends CacheBenchmark {
+    }
+}
@@ -0,0 +1,119 @@
+package cache;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Compares {@link LinkedList} with {@link IndexedLinkedList} under the churn
+ * of an LRU cache: every operation moves a random element to the front, adds
+ * a new element and removes the last one, at two list sizes. Every thread
+ * churns a list of its own, so running with more threads (<tt>-t</tt>)
+ * shows how the node and the array layout share the memory bandwidth.
+ * Add <tt>-prof gc</tt> for the bytes each operation allocates.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListChurnBenchmark {
+
+    /**
+     * Length of the precomputed sequence of elements to move.
+     */
+    static final int SEQUENCE_LENGTH = 1 << 16;
+
+    /**
+     * The size of the lists and the elements each operation moves.
+     */
+    @State(Scope.Thread)
+    public static class Churn {
+
+        @Param({"1024", "100000"})
+        public int size;
+
+        int[] slots;
+        int i;
+
+        @Setup
+        public void setUp() {
+            Random random = new Random(42);
+            slots = new int[SEQUENCE_LENGTH];
+            for (int n = 0; n < SEQUENCE_LENGTH; n++) {
+                slots[n] = random.nextInt(size);
+            }
+        }
+
+        int next() {
+            return slots[i++ & (SEQUENCE_LENGTH - 1)];
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class NodeList {
+
+        LinkedList<Integer> list;
+        LinkedListNode<Integer>[] nodes;
+
+        @Setup
+        @SuppressWarnings("unchecked")
+        public void setUp(Churn churn) {
+            list = new LinkedList<>();
+            nodes = (LinkedListNode<Integer>[]) new LinkedListNode<?>[churn.size];
+            for (int i = 0; i < churn.size; i++) {
+                nodes[i] = list.addFirst(i);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class IndexedList {
+
+        IndexedLinkedList<Integer> list;
+        int[] indexes;
+
+        @Setup
+        public void setUp(Churn churn) {
+            list = new IndexedLinkedList<>(churn.size);
+            indexes = new int[churn.size];
+            for (int i = 0; i < churn.size; i++) {
+                indexes[i] = list.addFirst(i);
+            }
+        }
+    }
+
+    @Benchmark
+    public int linkedList(Churn churn, NodeList state) {
+        LinkedList<Integer> list = state.list;
+        LinkedListNode<Integer> node = state.nodes[churn.next()];
+        node.remove();
+        list.addFirst(node);
+        LinkedListNode<Integer> last = list.getLast();
+        int victim = last.object;
+        last.remove();
+        state.nodes[victim] = list.addFirst(victim);
+        return victim;
+    }
+
+    @Benchmark
+    public int indexedLinkedList(Churn churn, IndexedList state) {
+        IndexedLinkedList<Integer> list = state.list;
+        list.moveToFront(state.indexes[churn.next()]);
+        int victim = list.remove(list.getLast());
+        state.indexes[victim] = list.addFirst(victim);
+        return victim;
+    }
+}